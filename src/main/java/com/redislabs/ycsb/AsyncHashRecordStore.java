@@ -0,0 +1,340 @@
+package com.redislabs.ycsb;
+
+import com.codelry.util.ycsb.ByteIterator;
+import com.codelry.util.ycsb.DBException;
+import com.codelry.util.ycsb.Status;
+import com.codelry.util.ycsb.StringByteIterator;
+import com.codelry.util.ycsb.measurements.Measurements;
+
+import io.lettuce.core.AbstractRedisClient;
+import io.lettuce.core.Range;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.ScoredValue;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+  Pipelined variant of the Hash record store.
+
+  Every client thread owns one connection with auto flush disabled.  Commands
+  are queued and written in batches, and up to a fixed window of operations
+  may be outstanding per thread.
+
+  Inserts, updates and deletes return BATCHED_OK as soon as they are queued,
+  so the standard INSERT, UPDATE and DELETE series only measure the time to
+  queue them; their end-to-end latency is recorded when the reply arrives
+  under ASYNC-INSERT, ASYNC-UPDATE and ASYNC-DELETE, which are the series to
+  report.  Reads and scans have to hand data back, so they flush the queue
+  and wait for their own reply; the standard READ and SCAN series hold their
+  real latency, including the time spent behind queued writes.  A window
+  permit is handed back however an operation ends, so a command that could
+  not be queued does not stall the final drain.
+
+  Values are written as strings without compression, so the store refuses
+  redis.compression.
+ */
+public class AsyncHashRecordStore implements RecordStore {
+  private static final Logger logger = LoggerFactory.getLogger(AsyncHashRecordStore.class);
+
+  private static final AtomicInteger THREADS = new AtomicInteger(0);
+  private static final Object INIT_COORDINATOR = new Object();
+  private static AbstractRedisClient client;
+  private static ScanIndex index;
+
+  private final int windowSize;
+  private final int batchSize;
+  private final Semaphore window;
+  private final MultiplexedConnectionManager<String, String, ?> connection;
+  private final Measurements measurements = Measurements.getMeasurements();
+  private final AtomicLong failures = new AtomicLong(0);
+  private int unflushed = 0;
+
+  AsyncHashRecordStore(RedisConfig redisConfig, int poolMaxSize) {
+    if (!redisConfig.getCompression().equalsIgnoreCase("NONE")) {
+      throw new IllegalArgumentException("Compression is not supported with the async record store");
+    }
+    RedisClientBuilder clientBuilder = new RedisClientBuilder.Builder().redisConfig(redisConfig).build();
+
+    synchronized (INIT_COORDINATOR) {
+      THREADS.incrementAndGet();
+      if (client == null) {
+        logger.debug("Initializing Redis client: datatype: Hash, index: Set, mode: async");
+
+        client = redisConfig.isClusterEnabled() ? clientBuilder.getClusterClient() : clientBuilder.getClient();
+        index = new ScanIndex(redisConfig);
+      }
+      connection = clientBuilder.getDedicatedConnection(client);
+    }
+
+    this.windowSize = Math.max(1, redisConfig.getAsyncWindow());
+    this.batchSize = Math.max(1, Math.min(redisConfig.getAsyncBatch(), windowSize));
+    this.window = new Semaphore(windowSize);
+
+    connection.setAutoFlushCommands(false);
+  }
+
+  private void acquire() throws InterruptedException {
+    if (!window.tryAcquire()) {
+      flush();
+      window.acquire();
+    }
+  }
+
+  private void queued() {
+    if (++unflushed >= batchSize) {
+      flush();
+    }
+  }
+
+  private void flush() {
+    if (unflushed > 0) {
+      connection.flushCommands();
+      unflushed = 0;
+    }
+  }
+
+  private void flushNow() {
+    connection.flushCommands();
+    unflushed = 0;
+  }
+
+  /*
+    Queues a request, sends everything queued so far and waits for the reply
+    the caller needs.  The window permit is returned however the request
+    ends, including when it could not be queued.
+   */
+  private <T> T call(ConnectionManager.CommandCallback<RedisClusterAsyncCommands<String, String>, CompletableFuture<T>> request)
+      throws Exception {
+    acquire();
+    try {
+      CompletableFuture<T> reply = connection.async(request);
+      flushNow();
+      return reply.get();
+    } finally {
+      window.release();
+    }
+  }
+
+  private static void putValues(Map<String, ByteIterator> result, Map<String, String> values, Set<String> fields) {
+    for (Map.Entry<String, String> entry : values.entrySet()) {
+      if (fields == null || fields.contains(entry.getKey())) {
+        result.put(entry.getKey(), new StringByteIterator(entry.getValue()));
+      }
+    }
+  }
+
+  private void complete(String operation, long start, Throwable error) {
+    window.release();
+    int latency = (int) TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+    measurements.measure(operation, latency);
+    if (error != null) {
+      logger.error("Error during async {}: {}", operation, error.getMessage());
+      failures.incrementAndGet();
+      measurements.reportStatus(operation, Status.ERROR);
+    } else {
+      measurements.reportStatus(operation, Status.OK);
+    }
+  }
+
+  /*
+    Queues a write without waiting for it.  The window permit is returned
+    when the reply arrives, or straight away if the request could not be
+    queued.
+   */
+  private Status submit(String operation,
+                        ConnectionManager.CommandCallback<RedisClusterAsyncCommands<String, String>, ? extends CompletionStage<?>> request)
+      throws Exception {
+    acquire();
+    long start = System.nanoTime();
+    CompletionStage<?> stage;
+    try {
+      stage = connection.async(request);
+    } catch (Exception e) {
+      window.release();
+      throw e;
+    }
+    stage.whenComplete((value, error) -> complete(operation, start, error));
+    queued();
+    return Status.BATCHED_OK;
+  }
+
+  private long lease(String key, long amount) throws Exception {
+    CompletableFuture<Long> lease = connection.async(commands -> commands.incrby(key, amount).toCompletableFuture());
+    flushNow();
+    return lease.get();
+  }
+
+  @Override
+  public void disconnect() throws DBException {
+    boolean drained = false;
+    flush();
+    try {
+      drained = window.tryAcquire(windowSize, 60, TimeUnit.SECONDS);
+      if (!drained) {
+        logger.warn("Timed out waiting for {} outstanding operations", windowSize - window.availablePermits());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    connection.close();
+
+    synchronized (INIT_COORDINATOR) {
+      int count = THREADS.decrementAndGet();
+      if (client != null && count == 0) {
+        logger.debug("Shutting down Redis client");
+        client.shutdown();
+        client = null;
+      }
+    }
+
+    // queued writes that failed or never completed leave the load incomplete
+    if (failures.get() > 0) {
+      throw new DBException(failures.get() + " async operations failed");
+    }
+    if (!drained) {
+      throw new DBException("Timed out waiting for outstanding async operations");
+    }
+  }
+
+  @Override
+  public Status read(String table, String key, Set<String> fields, Map<String, ByteIterator> result) {
+    try {
+      Map<String, String> values = call(commands -> commands.hgetall(key).toCompletableFuture());
+      putValues(result, values, fields);
+    } catch (Exception e) {
+      logger.error("Error during Hash read: {}", e.getMessage(), e);
+      return Status.ERROR;
+    }
+
+    return result.isEmpty() ? Status.ERROR : Status.OK;
+  }
+
+  /*
+    Every thread has a single connection, so an alternate read shares it.
+   */
+  @Override
+  public CompletableFuture<Status> readAsync(String table, String key, Set<String> fields,
+                                             Map<String, ByteIterator> result, boolean alternate) {
+    try {
+      acquire();
+      CompletableFuture<Status> status;
+      try {
+        status = connection.submit(alternate, commands -> commands.hgetall(key), values -> {
+          putValues(result, values, fields);
+          return result.isEmpty() ? Status.ERROR : Status.OK;
+        });
+      } catch (Exception e) {
+        window.release();
+        throw e;
+      }
+      status.whenComplete((value, error) -> window.release());
+      flushNow();
+      return status;
+    } catch (Exception e) {
+      logger.error("Error during Hash read: {}", e.getMessage(), e);
+      return CompletableFuture.completedFuture(Status.ERROR);
+    }
+  }
+
+  @Override
+  public Status insert(String table, String key, Map<String, ByteIterator> values) {
+    Map<String, String> map = StringByteIterator.getStringMap(values);
+
+    try {
+      // lease the score first so a failed lease leaves nothing queued
+      long score = index.nextScore(this::lease);
+      return submit("ASYNC-INSERT", commands -> {
+        RedisFuture<String> write = commands.hmset(key, map);
+        RedisFuture<Long> added = commands.zadd(index.indexKey(key), score, key);
+        return CompletableFuture.allOf(write.toCompletableFuture(), added.toCompletableFuture());
+      });
+    } catch (Exception e) {
+      logger.error("Error during Hash insert: {}", e.getMessage(), e);
+      return Status.ERROR;
+    }
+  }
+
+  @Override
+  public Status update(String table, String key, Map<String, ByteIterator> values) {
+    Map<String, String> map = StringByteIterator.getStringMap(values);
+
+    try {
+      return submit("ASYNC-UPDATE", commands -> commands.hmset(key, map));
+    } catch (Exception e) {
+      logger.error("Error during Hash update: {}", e.getMessage(), e);
+      return Status.ERROR;
+    }
+  }
+
+  @Override
+  public Status delete(String table, String key) {
+    try {
+      return submit("ASYNC-DELETE", commands -> {
+        RedisFuture<Long> remove = commands.del(key);
+        RedisFuture<Long> removed = commands.zrem(index.indexKey(key), key);
+        return CompletableFuture.allOf(remove.toCompletableFuture(), removed.toCompletableFuture());
+      });
+    } catch (Exception e) {
+      logger.error("Error during Hash delete: {}", e.getMessage(), e);
+      return Status.ERROR;
+    }
+  }
+
+  @Override
+  public Status scan(String table, String key, int count, Set<String> fields,
+                     Vector<HashMap<String, ByteIterator>> result) {
+    try {
+      List<Map<String, String>> fetched = call(commands -> commands.zscore(index.indexKey(key), key)
+          .thenCompose(id -> {
+            Range<Double> range = Range.create(id, id + count - 1);
+            List<CompletableFuture<List<ScoredValue<String>>>> ranges = new ArrayList<>();
+            for (String indexKey : index.indexKeys()) {
+              ranges.add(commands.zrangebyscoreWithScores(indexKey, range).toCompletableFuture());
+            }
+            connection.flushCommands();
+            return CompletableFuture.allOf(ranges.toArray(new CompletableFuture[0]))
+                .thenApply(v -> {
+                  List<ScoredValue<String>> members = new ArrayList<>();
+                  for (CompletableFuture<List<ScoredValue<String>>> f : ranges) {
+                    members.addAll(f.join());
+                  }
+                  return index.sortedKeys(members, count);
+                });
+          })
+          .thenCompose(keys -> {
+            List<CompletableFuture<Map<String, String>>> futures = new ArrayList<>(keys.size());
+            for (String k : keys) {
+              futures.add(commands.hgetall(k).toCompletableFuture());
+            }
+            connection.flushCommands();
+            return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+                .thenApply(v -> {
+                  List<Map<String, String>> records = new ArrayList<>(futures.size());
+                  for (CompletableFuture<Map<String, String>> f : futures) {
+                    records.add(f.join());
+                  }
+                  return records;
+                });
+          }).toCompletableFuture());
+      for (Map<String, String> record : fetched) {
+        HashMap<String, ByteIterator> values = new HashMap<>(record.size());
+        putValues(values, record, fields);
+        result.add(values);
+      }
+      return Status.OK;
+    } catch (Exception e) {
+      logger.error("Error during Hash scan: {}", e.getMessage(), e);
+      return Status.ERROR;
+    }
+  }
+}
@@ -0,0 +1,87 @@
+package com.redislabs.ycsb;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+
+/*
+  Buffers inserts during the load phase and hands them to the store in
+  batches.
+
+  Each client thread owns a loader.  The record count and start time live in
+  a LoadRate shared by all threads of a store, so the overall rate can be
+  logged once when the last thread disconnects.
+ */
+public class BulkLoader<V> {
+
+  public interface BatchWriter<V> {
+    void write(List<String> keys, List<Map<String, V>> values) throws Exception;
+  }
+
+  public static final class LoadRate {
+    private final AtomicLong records = new AtomicLong(0);
+    private final AtomicLong start = new AtomicLong(0);
+
+    public void log(Logger logger) {
+      long loaded = records.getAndSet(0);
+      long started = start.getAndSet(0);
+      if (loaded == 0 || started == 0) {
+        return;
+      }
+      double seconds = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started)) / 1000.0;
+      logger.info("Bulk loaded {} records in {} s ({} records/sec)",
+          loaded, String.format("%.1f", seconds), String.format("%.0f", loaded / seconds));
+    }
+  }
+
+  private final int batchSize;
+  private final LoadRate rate;
+  private final BatchWriter<V> writer;
+  private final List<String> keys;
+  private final List<Map<String, V>> values;
+
+  public BulkLoader(int batchSize, LoadRate rate, BatchWriter<V> writer) {
+    this.batchSize = batchSize;
+    this.rate = rate;
+    this.writer = writer;
+    this.keys = new ArrayList<>(Math.max(0, batchSize));
+    this.values = new ArrayList<>(Math.max(0, batchSize));
+  }
+
+  public boolean isEnabled() {
+    return batchSize > 0;
+  }
+
+  /*
+    Buffers one record, and writes the batch once it is full.  Returns true
+    when a batch was written.
+   */
+  public boolean add(String key, Map<String, V> value) throws Exception {
+    rate.start.compareAndSet(0, System.nanoTime());
+    keys.add(key);
+    values.add(value);
+    if (keys.size() < batchSize) {
+      return false;
+    }
+    flush();
+    return true;
+  }
+
+  public void flush() throws Exception {
+    if (keys.isEmpty()) {
+      return;
+    }
+
+    try {
+      writer.write(keys, values);
+      rate.records.addAndGet(keys.size());
+    } finally {
+      keys.clear();
+      values.clear();
+    }
+  }
+}
@@ -1,16 +1,52 @@
 package com.redislabs.ycsb;
 
 import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.DeserializationContext;
 import com.fasterxml.jackson.databind.JsonDeserializer;
 import com.codelry.util.ycsb.ByteIterator;
 import com.codelry.util.ycsb.StringByteIterator;
 
 import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
 
 public class ByteIteratorDeserializer extends JsonDeserializer<ByteIterator> {
   @Override
   public ByteIterator deserialize(JsonParser jp, DeserializationContext context) throws IOException {
     return new StringByteIterator(jp.readValueAs(String.class));
   }
+
+  /*
+    Reads the fields of the object the parser is positioned on straight into
+    the record map, in one pass and without building a tree.  Fields outside
+    the requested set and non-scalar values are skipped.
+   */
+  public static void readObject(JsonParser jp, Set<String> fields, Map<String, ByteIterator> result) throws IOException {
+    while (jp.nextToken() == JsonToken.FIELD_NAME) {
+      String name = jp.currentName();
+      JsonToken token = jp.nextToken();
+      if (token.isScalarValue() && (fields == null || fields.contains(name))) {
+        result.put(name, new StringByteIterator(jp.getValueAsString()));
+      } else {
+        jp.skipChildren();
+      }
+    }
+  }
+
+  /*
+    Reads the first element of the array the parser is positioned on, which
+    is how JSON.GET returns the match for a JSONPath, and leaves the parser on
+    the closing bracket.
+   */
+  public static void readFirstElement(JsonParser jp, String field, Map<String, ByteIterator> result) throws IOException {
+    JsonToken token = jp.nextToken();
+    if (token != null && token.isScalarValue() && field != null) {
+      result.put(field, new StringByteIterator(jp.getValueAsString()));
+    }
+    while (token != null && token != JsonToken.END_ARRAY) {
+      jp.skipChildren();
+      token = jp.nextToken();
+    }
+  }
 }
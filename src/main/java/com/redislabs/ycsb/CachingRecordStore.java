@@ -0,0 +1,244 @@
+package com.redislabs.ycsb;
+
+import com.codelry.util.ycsb.ByteArrayByteIterator;
+import com.codelry.util.ycsb.ByteIterator;
+import com.codelry.util.ycsb.DBException;
+import com.codelry.util.ycsb.Status;
+
+import io.lettuce.core.RedisChannelHandler;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisConnectionStateListener;
+import io.lettuce.core.TrackingArgs;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.push.PushMessage;
+import io.lettuce.core.codec.StringCodec;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+  Near cache in front of another record store.
+
+  Full record reads are served from a bounded local cache that is kept
+  coherent with RESP3 CLIENT TRACKING.  In BCAST mode the server pushes an
+  invalidation for every write to a key under the configured prefix.  In
+  DEFAULT mode the server only tracks keys this client has read, so every
+  miss registers the key on the tracking connection before it is fetched.
+
+  Tracking state is per node, so the cache is only available against a
+  single endpoint.
+ */
+public class CachingRecordStore implements RecordStore {
+  private static final Logger logger = LoggerFactory.getLogger(CachingRecordStore.class);
+
+  private static final AtomicInteger THREADS = new AtomicInteger(0);
+  private static final Object INIT_COORDINATOR = new Object();
+  private static RedisClient client;
+  private static StatefulRedisConnection<String, String> tracking;
+  private static NearCache cache;
+  private static boolean broadcast;
+  private static String prefix;
+  private static volatile boolean tracked;
+
+  private final RecordStore store;
+
+  CachingRecordStore(RecordStore store, RedisConfig redisConfig) {
+    if (redisConfig.isClusterEnabled()) {
+      throw new IllegalArgumentException("Client side caching is not supported in cluster mode");
+    }
+    if (redisConfig.getRedisURIs().size() > 1) {
+      throw new IllegalArgumentException("Client side caching is not supported with multiple hosts");
+    }
+    this.store = store;
+
+    synchronized (INIT_COORDINATOR) {
+      THREADS.incrementAndGet();
+      if (client == null) {
+        RedisClientBuilder clientBuilder = new RedisClientBuilder.Builder().redisConfig(redisConfig).build();
+
+        broadcast = !redisConfig.getCacheMode().equalsIgnoreCase("DEFAULT");
+        prefix = redisConfig.getCachePrefix();
+        cache = new NearCache(redisConfig.getCacheSize());
+        logger.debug("Initializing near cache: size: {}, tracking: {}", redisConfig.getCacheSize(), broadcast ? "BCAST" : "DEFAULT");
+
+        client = clientBuilder.getTrackingClient();
+        client.addListener(new RedisConnectionStateListener() {
+          @Override
+          public void onRedisDisconnected(RedisChannelHandler<?, ?> connection) {
+            // invalidations are lost while the connection is down
+            tracked = false;
+            cache.clear();
+          }
+        });
+        tracking = client.connect();
+        tracking.addListener(CachingRecordStore::onPushMessage);
+        enableTracking();
+      }
+    }
+  }
+
+  private static void enableTracking() {
+    TrackingArgs args = TrackingArgs.Builder.enabled();
+    if (broadcast) {
+      args.bcast().prefixes(prefix);
+    }
+    tracking.sync().clientTracking(args);
+    tracked = true;
+  }
+
+  private static void ensureTracking() {
+    if (tracked) {
+      return;
+    }
+    synchronized (INIT_COORDINATOR) {
+      if (!tracked && tracking != null && tracking.isOpen()) {
+        try {
+          enableTracking();
+        } catch (Exception e) {
+          logger.debug("Tracking not yet restored: {}", e.getMessage());
+        }
+      }
+    }
+  }
+
+  private static void onPushMessage(PushMessage message) {
+    if (!message.getType().equals("invalidate")) {
+      return;
+    }
+    List<Object> content = message.getContent(StringCodec.UTF8::decodeKey);
+    Object keys = content.size() > 1 ? content.get(1) : null;
+    if (keys instanceof List) {
+      for (Object key : (List<?>) keys) {
+        cache.invalidate((String) key);
+      }
+    } else {
+      cache.invalidateAll();
+    }
+  }
+
+  @Override
+  public void disconnect() throws DBException {
+    // a failed flush in the wrapped store must not leave the tracking client running
+    try {
+      store.disconnect();
+    } finally {
+      synchronized (INIT_COORDINATOR) {
+        int count = THREADS.decrementAndGet();
+        if (client != null && count == 0) {
+          logger.info("Near cache: hits: {}, misses: {}, hit ratio: {}, bypassed: {}, invalidations: {}",
+              cache.getHits(), cache.getMisses(), String.format("%.4f", cache.getHitRatio()), cache.getBypasses(),
+              cache.getInvalidations());
+          tracked = false;
+          tracking.close();
+          client.shutdown();
+          tracking = null;
+          client = null;
+        }
+      }
+    }
+  }
+
+  @Override
+  public Status read(String table, String key, Set<String> fields, Map<String, ByteIterator> result) {
+    ensureTracking();
+    if (!tracked) {
+      cache.bypass();
+      return store.read(table, key, fields, result);
+    }
+
+    Map<String, byte[]> record = cache.get(key);
+    if (record != null) {
+      for (Map.Entry<String, byte[]> entry : record.entrySet()) {
+        if (fields == null || fields.contains(entry.getKey())) {
+          result.put(entry.getKey(), new ByteArrayByteIterator(entry.getValue()));
+        }
+      }
+      return result.isEmpty() ? Status.ERROR : Status.OK;
+    }
+
+    if (fields != null) {
+      // only complete records are cached
+      cache.bypass();
+      return store.read(table, key, fields, result);
+    }
+
+    Object token = cache.reserve(key);
+    try {
+      if (!broadcast) {
+        tracking.sync().exists(key);
+      }
+
+      Map<String, ByteIterator> values = new HashMap<>();
+      Status status = store.read(table, key, null, values);
+      if (status != Status.OK) {
+        cache.release(key, token);
+        return status;
+      }
+
+      Map<String, byte[]> fetched = new HashMap<>(values.size());
+      for (Map.Entry<String, ByteIterator> entry : values.entrySet()) {
+        byte[] bytes = entry.getValue().toArray();
+        fetched.put(entry.getKey(), bytes);
+        result.put(entry.getKey(), new ByteArrayByteIterator(bytes));
+      }
+      cache.install(key, token, fetched);
+      return status;
+    } catch (Exception e) {
+      cache.release(key, token);
+      logger.error("Error during cached read: {}", e.getMessage(), e);
+      return Status.ERROR;
+    }
+  }
+
+  /*
+    Non-blocking reads are answered from the cache when the record is there
+    and otherwise go to the store without filling the cache.
+   */
+  @Override
+  public CompletableFuture<Status> readAsync(String table, String key, Set<String> fields,
+                                             Map<String, ByteIterator> result, boolean alternate) {
+    ensureTracking();
+    Map<String, byte[]> record = tracked ? cache.get(key) : null;
+    if (record == null) {
+      cache.bypass();
+      return store.readAsync(table, key, fields, result, alternate);
+    }
+    for (Map.Entry<String, byte[]> entry : record.entrySet()) {
+      if (fields == null || fields.contains(entry.getKey())) {
+        result.put(entry.getKey(), new ByteArrayByteIterator(entry.getValue()));
+      }
+    }
+    return CompletableFuture.completedFuture(result.isEmpty() ? Status.ERROR : Status.OK);
+  }
+
+  @Override
+  public Status insert(String table, String key, Map<String, ByteIterator> values) {
+    Status status = store.insert(table, key, values);
+    cache.evict(key);
+    return status;
+  }
+
+  @Override
+  public Status update(String table, String key, Map<String, ByteIterator> values) {
+    Status status = store.update(table, key, values);
+    cache.evict(key);
+    return status;
+  }
+
+  @Override
+  public Status delete(String table, String key) {
+    Status status = store.delete(table, key);
+    cache.evict(key);
+    return status;
+  }
+
+  @Override
+  public Status scan(String table, String key, int count, Set<String> fields,
+                     Vector<HashMap<String, ByteIterator>> result) {
+    return store.scan(table, key, count, fields, result);
+  }
+}
@@ -0,0 +1,142 @@
+package com.redislabs.ycsb;
+
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.api.StatefulConnection;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import io.lettuce.core.cluster.api.sync.RedisClusterCommands;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+
+/*
+  Hands out Redis connections to the record stores.
+
+  Stores run their commands through a callback so they do not need to know
+  whether the connection was borrowed from a pool or is shared between threads,
+  or whether it talks to a single endpoint or to a cluster.
+ */
+public abstract class ConnectionManager<K, V, C extends StatefulConnection<K, V>> {
+
+  public interface CommandCallback<T, R> {
+    R apply(T commands) throws Exception;
+  }
+
+  public interface ReplyDecoder<T, R> {
+    R apply(T reply) throws Exception;
+  }
+
+  private final Function<C, RedisClusterCommands<K, V>> syncCommands;
+  private final Function<C, RedisClusterAsyncCommands<K, V>> asyncCommands;
+
+  protected ConnectionManager(Function<C, RedisClusterCommands<K, V>> syncCommands,
+                              Function<C, RedisClusterAsyncCommands<K, V>> asyncCommands) {
+    this.syncCommands = syncCommands;
+    this.asyncCommands = asyncCommands;
+  }
+
+  protected abstract C acquire() throws Exception;
+
+  protected abstract void release(C connection);
+
+  /*
+    A connection for a request that should not share the one this thread
+    would normally get, such as a hedged read racing the original.
+   */
+  protected C acquireAlternate() throws Exception {
+    return acquire();
+  }
+
+  /*
+    True when the acquired connection is used by one thread at a time, so
+    auto flush can be switched off around a pipeline batch.
+   */
+  protected abstract boolean isExclusive();
+
+  public abstract void close();
+
+  public <R> R sync(CommandCallback<RedisClusterCommands<K, V>, R> callback) throws Exception {
+    C connection = acquire();
+    try {
+      return callback.apply(syncCommands.apply(connection));
+    } finally {
+      release(connection);
+    }
+  }
+
+  public <R> R async(CommandCallback<RedisClusterAsyncCommands<K, V>, R> callback) throws Exception {
+    C connection = acquire();
+    try {
+      return callback.apply(asyncCommands.apply(connection));
+    } finally {
+      release(connection);
+    }
+  }
+
+  /*
+    Issues one command without waiting for the reply.  The connection is held
+    until the reply arrives, so a pooled request issued meanwhile is handed a
+    different connection.  The reply is decoded on the thread that completes
+    it, and cancelling the returned future cancels the command.
+   */
+  public <T, R> CompletableFuture<R> submit(boolean alternate,
+                                            CommandCallback<RedisClusterAsyncCommands<K, V>, RedisFuture<T>> callback,
+                                            ReplyDecoder<T, R> decoder) throws Exception {
+    C connection = alternate ? acquireAlternate() : acquire();
+    CompletableFuture<T> reply;
+    try {
+      reply = callback.apply(asyncCommands.apply(connection)).toCompletableFuture();
+    } catch (Exception e) {
+      release(connection);
+      throw e;
+    }
+    reply.whenComplete((value, error) -> release(connection));
+
+    CompletableFuture<R> result = reply.thenApply(value -> {
+      try {
+        return decoder.apply(value);
+      } catch (Exception e) {
+        throw new CompletionException(e);
+      }
+    });
+    result.whenComplete((value, error) -> {
+      if (result.isCancelled()) {
+        reply.cancel(true);
+      }
+    });
+    return result;
+  }
+
+  /*
+    Queues every command issued by the callback and writes them as a single
+    batch, then waits for all replies.  On shared connections the commands are
+    still issued back to back, but auto flush is left alone.
+   */
+  public <R> List<R> pipeline(CommandCallback<RedisClusterAsyncCommands<K, V>, List<? extends RedisFuture<? extends R>>> callback) throws Exception {
+    C connection = acquire();
+    try {
+      List<? extends RedisFuture<? extends R>> futures;
+      boolean exclusive = isExclusive();
+      if (exclusive) {
+        connection.setAutoFlushCommands(false);
+      }
+      try {
+        futures = callback.apply(asyncCommands.apply(connection));
+      } finally {
+        if (exclusive) {
+          connection.flushCommands();
+          connection.setAutoFlushCommands(true);
+        }
+      }
+      List<R> results = new ArrayList<>(futures.size());
+      for (RedisFuture<? extends R> future : futures) {
+        results.add(future.get());
+      }
+      return results;
+    } finally {
+      release(connection);
+    }
+  }
+}
@@ -0,0 +1,171 @@
+package com.redislabs.ycsb;
+
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.cluster.api.sync.RedisClusterCommands;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/*
+  Describes the shape of a loaded dataset so it can be reused across runs.
+
+  The fingerprint covers everything that changes what the load phase writes:
+  the record store, the record count and size, and the index layout.  It is
+  stored in a metadata hash together with the record range each completed
+  load covered, so several load generators splitting the key space with
+  insertstart and insertcount each record their own part.  Prep only keeps
+  the data when the fingerprint matches and the completed ranges cover every
+  record.
+
+  A run phase that inserts or deletes records leaves extra keys and index
+  entries behind, so it marks the metadata as modified before its first such
+  write, and a modified dataset is flushed and loaded again.  Reads and
+  updates leave a dataset reusable.
+ */
+public class DatasetMetadata {
+
+  public static final String METADATA_KEY = "_ycsb_dataset";
+
+  private static final String FINGERPRINT_FIELD = "fingerprint";
+  private static final String DESCRIPTION_FIELD = "description";
+  private static final String RANGE_PREFIX = "loaded:";
+  private static final String MODIFIED_FIELD = "modified";
+
+  // a load that finishes against metadata from another dataset starts it over
+  private static final String RECORD_SCRIPT =
+      "if redis.call('HGET', KEYS[1], ARGV[1]) ~= ARGV[2] then redis.call('DEL', KEYS[1]) end " +
+      "redis.call('HSET', KEYS[1], ARGV[1], ARGV[2], ARGV[3], ARGV[4], ARGV[5], 'true') " +
+      "return 1";
+
+  private final String description;
+  private final String fingerprint;
+  private final long recordCount;
+  private final long insertStart;
+  private final long insertCount;
+
+  public DatasetMetadata(RedisConfig redisConfig) {
+    this.description = String.format("store=%s;index=%s;layout=%s;endpoints=%d;recordcount=%d;fieldcount=%d;fieldlength=%d;compression=%s",
+        storeType(redisConfig), indexType(redisConfig), layout(redisConfig), redisConfig.getRedisURIs().size(), redisConfig.getRecordCount(),
+        redisConfig.getFieldCount(), redisConfig.getFieldLength(), compression(redisConfig));
+    this.fingerprint = Digests.sha1(description);
+    this.recordCount = redisConfig.getRecordCount();
+    this.insertStart = redisConfig.getInsertStart();
+    this.insertCount = redisConfig.getInsertCount();
+  }
+
+  private static String storeType(RedisConfig redisConfig) {
+    if (redisConfig.isTimeSeriesWorkload()) {
+      return "TIMESERIES";
+    }
+    if (redisConfig.isEnterpriseDb()) {
+      return redisConfig.getSearchStrategy().equals("JSON") ? "JSON" : "HASH_SEARCH";
+    }
+    return "HASH";
+  }
+
+  private static String indexType(RedisConfig redisConfig) {
+    if (redisConfig.isTimeSeriesWorkload()) {
+      return "LABELS";
+    }
+    if (redisConfig.isEnterpriseDb()) {
+      return "SEARCH:" + (redisConfig.isIdSortable() ? "SORTABLE" : "NUMERIC");
+    }
+    return "SET:" + redisConfig.getIndexShards();
+  }
+
+  private static String layout(RedisConfig redisConfig) {
+    if (redisConfig.getKeyLayout().equalsIgnoreCase("NONE")) {
+      return "NONE";
+    }
+    return redisConfig.getKeyLayout().toUpperCase() + ":" + redisConfig.getKeyBucketSize();
+  }
+
+  private static String compression(RedisConfig redisConfig) {
+    if (redisConfig.getCompression().equalsIgnoreCase("NONE")) {
+      return "NONE";
+    }
+    return redisConfig.getCompression().toUpperCase() + ":" + redisConfig.getCompressionMode().toUpperCase();
+  }
+
+  public String getDescription() {
+    return description;
+  }
+
+  public String getFingerprint() {
+    return fingerprint;
+  }
+
+  public long getInsertStart() {
+    return insertStart;
+  }
+
+  public long getInsertCount() {
+    return insertCount;
+  }
+
+  /*
+    Returns the description of the dataset in the database when it was
+    loaded with different settings, or null when it matches or was loaded
+    without metadata.
+   */
+  public String getMismatch(RedisClusterCommands<String, String> commands) {
+    Map<String, String> metadata = commands.hgetall(METADATA_KEY);
+    String loaded = metadata.get(FINGERPRINT_FIELD);
+    return loaded == null || loaded.equals(fingerprint) ? null : metadata.get(DESCRIPTION_FIELD);
+  }
+
+  public boolean isLoaded(RedisClusterCommands<String, String> commands) {
+    Map<String, String> metadata = commands.hgetall(METADATA_KEY);
+    if (!fingerprint.equals(metadata.get(FINGERPRINT_FIELD)) || metadata.containsKey(MODIFIED_FIELD)) {
+      return false;
+    }
+    List<long[]> ranges = new ArrayList<>();
+    for (String field : metadata.keySet()) {
+      if (field.startsWith(RANGE_PREFIX)) {
+        String[] range = field.substring(RANGE_PREFIX.length()).split(":");
+        ranges.add(new long[]{Long.parseLong(range[0]), Long.parseLong(range[1])});
+      }
+    }
+    return isCovered(ranges, recordCount);
+  }
+
+  static boolean isCovered(List<long[]> ranges, long recordCount) {
+    if (ranges.isEmpty()) {
+      return false;
+    }
+    ranges.sort((a, b) -> Long.compare(a[0], b[0]));
+    long covered = 0;
+    for (long[] range : ranges) {
+      if (range[0] > covered) {
+        break;
+      }
+      covered = Math.max(covered, range[0] + range[1]);
+    }
+    return covered >= recordCount;
+  }
+
+  /*
+    Starts the metadata over for a freshly flushed database.
+   */
+  public void reset(RedisClusterCommands<String, String> commands) {
+    commands.del(METADATA_KEY);
+    commands.hset(METADATA_KEY, FINGERPRINT_FIELD, fingerprint);
+    commands.hset(METADATA_KEY, DESCRIPTION_FIELD, description);
+  }
+
+  /*
+    Marks the dataset as changed by a run phase so it is not reused.
+   */
+  public void markModified(RedisClusterCommands<String, String> commands) {
+    commands.hset(METADATA_KEY, MODIFIED_FIELD, "true");
+  }
+
+  /*
+    Records the range this load generator wrote.
+   */
+  public void recordLoaded(RedisClusterCommands<String, String> commands) {
+    commands.eval(RECORD_SCRIPT, ScriptOutputType.INTEGER, new String[]{METADATA_KEY},
+        FINGERPRINT_FIELD, fingerprint, DESCRIPTION_FIELD, description, RANGE_PREFIX + insertStart + ":" + insertCount);
+  }
+}
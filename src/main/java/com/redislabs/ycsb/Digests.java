@@ -0,0 +1,31 @@
+package com.redislabs.ycsb;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/*
+  Hex SHA-1 digests, as used for script hashes, compare-and-set checks and
+  dataset fingerprints.
+ */
+public final class Digests {
+
+  public static String sha1(String value) {
+    return sha1(value.getBytes(StandardCharsets.UTF_8));
+  }
+
+  public static String sha1(byte[] value) {
+    try {
+      StringBuilder hex = new StringBuilder();
+      for (byte b : MessageDigest.getInstance("SHA-1").digest(value)) {
+        hex.append(String.format("%02x", b));
+      }
+      return hex.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private Digests() {
+  }
+}
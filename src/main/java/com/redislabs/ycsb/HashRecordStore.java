@@ -1,106 +1,397 @@
 package com.redislabs.ycsb;
 
+import com.codelry.util.ycsb.ByteArrayByteIterator;
 import com.codelry.util.ycsb.ByteIterator;
+import com.codelry.util.ycsb.DBException;
 import com.codelry.util.ycsb.Status;
-import com.codelry.util.ycsb.StringByteIterator;
 
+import io.lettuce.core.AbstractRedisClient;
+import io.lettuce.core.KeyValue;
 import io.lettuce.core.Range;
-import io.lettuce.core.RedisClient;
-import io.lettuce.core.api.StatefulRedisConnection;
-
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.RedisNoScriptException;
+import io.lettuce.core.RedisURI;
+import io.lettuce.core.ScoredValue;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.TransactionResult;
+import io.lettuce.core.api.sync.RedisCommands;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import io.lettuce.core.cluster.api.sync.RedisClusterCommands;
+
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicLong;
-import java.util.stream.Collectors;
 
-import org.apache.commons.pool2.impl.GenericObjectPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/*
+  Hash record store indexed by a sorted set.
+
+  Values travel as raw bytes in both directions: writes send the bytes of each
+  ByteIterator as they are, and reads wrap the decoded reply arrays without
+  copying or decoding them into strings.  When redis.compression is set the
+  values pass through a ValueCompressor on the way in and out.  In RECORD
+  mode the server can not merge fields into the compressed record, so an
+  update reads the record, merges it, and writes it back only if the stored
+  record is still the one it read, retrying when another client got there
+  first.
+
+  With redis.hosts the keyspace is spread over several standalone servers by
+  a ShardRouter.  Each endpoint has its own connections and its own scan
+  index; index scores come from one sequence so that scans can merge the
+  per-endpoint ranges by score.
+ */
 public class HashRecordStore implements RecordStore {
   private static final Logger logger = LoggerFactory.getLogger(HashRecordStore.class);
 
   private static final AtomicInteger THREADS = new AtomicInteger(0);
-  private static final AtomicLong COUNTER = new AtomicLong(0);
   private static final Object INIT_COORDINATOR = new Object();
-  private static GenericObjectPool<StatefulRedisConnection<String, String>> pool;
-  private static RedisClient client;
-
-  private final String indexName;
+  private static List<AbstractRedisClient> clients;
+  private static List<ConnectionManager<String, byte[], ?>> endpoints;
+  private static ShardRouter router;
+  private static ScanIndex index;
+  private static ScanIndex.IdLease sequence;
+  private static ValueCompressor compressor;
+  private static final BulkLoader.LoadRate loadRate = new BulkLoader.LoadRate();
+
+  private static final String INSERT_SCRIPT =
+      "redis.call('HSET', KEYS[1], unpack(ARGV, 2)) " +
+      "redis.call('ZADD', KEYS[2], ARGV[1], KEYS[1]) " +
+      "return redis.status_reply('OK')";
+  private static final String DELETE_SCRIPT =
+      "local n = redis.call('DEL', KEYS[1]) " +
+      "redis.call('ZREM', KEYS[2], KEYS[1]) " +
+      "return n";
+  private static final String UPDATE_SCRIPT =
+      "local current = redis.call('HGET', KEYS[1], ARGV[1]) " +
+      "if (current and redis.sha1hex(current) or '') ~= ARGV[2] then return 0 end " +
+      "redis.call('HSET', KEYS[1], ARGV[1], ARGV[3]) " +
+      "return 1";
+  private static final String FETCH_SCRIPT =
+      "return redis.call('HGET', KEYS[1], ARGV[1])";
+  private static final String INSERT_SCRIPT_SHA = Digests.sha1(INSERT_SCRIPT);
+  private static final String DELETE_SCRIPT_SHA = Digests.sha1(DELETE_SCRIPT);
+  private static final String UPDATE_SCRIPT_SHA = Digests.sha1(UPDATE_SCRIPT);
+  private static final String FETCH_SCRIPT_SHA = Digests.sha1(FETCH_SCRIPT);
+  private static final int UPDATE_RETRIES = 16;
+
+  private final String writeMode;
+  private final BulkLoader<byte[]> loader;
 
   HashRecordStore(RedisConfig redisConfig, int poolMaxSize) {
+    this.writeMode = redisConfig.getIndexWriteMode().toUpperCase();
+    if (writeMode.equals("MULTI") && (redisConfig.isClusterEnabled() || redisConfig.isMultiplexed())) {
+      throw new IllegalArgumentException("Index write mode MULTI requires pooled connections to a single endpoint");
+    }
+    if (writeMode.equals("LUA") && redisConfig.isClusterEnabled()) {
+      throw new IllegalArgumentException("Index write mode LUA is not supported in cluster mode");
+    }
+
+    this.loader = new BulkLoader<>(redisConfig.isBulkLoad() ? redisConfig.getLoadBatch() : 0, loadRate, this::writeLoadBatch);
+
+    List<RedisURI> uris = redisConfig.getRedisURIs();
+    if (uris.size() > 1 && redisConfig.isClusterEnabled()) {
+      throw new IllegalArgumentException("Multiple hosts are not supported in cluster mode");
+    }
+
     synchronized (INIT_COORDINATOR) {
       THREADS.incrementAndGet();
-      if (client == null) {
-        logger.debug("Initializing Redis client: datatype: Hash, index: Set");
+      if (clients == null) {
+        logger.debug("Initializing Redis client: datatype: Hash, index: Set, endpoints: {}", uris.size());
+
+        clients = new ArrayList<>(uris.size());
+        endpoints = new ArrayList<>(uris.size());
+        for (RedisURI uri : uris) {
+          RedisClientBuilder clientBuilder = new RedisClientBuilder.Builder().redisConfig(redisConfig).redisURI(uri).build();
+          AbstractRedisClient client = redisConfig.isClusterEnabled() ? clientBuilder.getClusterClient() : clientBuilder.getClient();
+          clients.add(client);
+          endpoints.add(clientBuilder.getBinaryConnectionManager(client, poolMaxSize));
+        }
+        router = new ShardRouter(endpoints.size());
+        // scores are leased from the first endpoint so they are comparable across all of them
+        sequence = (k, n) -> endpoints.get(0).sync(commands -> commands.incrby(k, n));
+        index = new ScanIndex(redisConfig);
+        compressor = new ValueCompressor(redisConfig);
+      }
+    }
+  }
 
-        RedisClientBuilder clientBuilder = new RedisClientBuilder.Builder().redisConfig(redisConfig).build();
+  public void addKeyToIndex(RedisClusterCommands<String, byte[]> commands, String key, long score) {
+    commands.zadd(index.indexKey(key), score, member(key));
+  }
 
-        client = clientBuilder.getClient();
-        pool = clientBuilder.getPool(client, poolMaxSize);
-      }
+  public void removeKeyFromIndex(RedisClusterCommands<String, byte[]> commands, String key) {
+    commands.zrem(index.indexKey(key), member(key));
+  }
+
+  private static ConnectionManager<String, byte[], ?> connections(String key) {
+    return endpoints.get(router.route(key));
+  }
+
+  private static byte[] member(String key) {
+    return key.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static Map<String, byte[]> toBytes(Map<String, ByteIterator> values) {
+    Map<String, byte[]> map = new HashMap<>(values.size());
+    for (Map.Entry<String, ByteIterator> entry : values.entrySet()) {
+      map.put(entry.getKey(), entry.getValue().toArray());
     }
+    return map;
+  }
 
-    this.indexName = redisConfig.getIndexSet();
+  private static <T> T evalScript(RedisClusterCommands<String, byte[]> commands, String script, String sha,
+                                  ScriptOutputType type, String[] keys, byte[]... args) {
+    try {
+      return commands.evalsha(sha, type, keys, args);
+    } catch (RedisNoScriptException e) {
+      return commands.eval(script, type, keys, args);
+    }
   }
 
-  public void addKeyToIndex(StatefulRedisConnection<String, String> connection, String key) {
-    connection.sync().zadd(indexName, COUNTER.incrementAndGet(), key);
+  private String insertWithIndex(String key, Map<String, byte[]> map) throws Exception {
+    String indexKey = index.indexKey(key);
+    // leased before a connection is taken, since the lease may need one of its own
+    long score = index.nextScore(sequence);
+    switch (writeMode) {
+      case "PIPELINE":
+        return connections(key).async(commands -> {
+          RedisFuture<String> write = commands.hmset(key, map);
+          RedisFuture<Long> added = commands.zadd(indexKey, score, member(key));
+          added.get();
+          return write.get();
+        });
+      case "MULTI":
+        return connections(key).sync(commands -> {
+          // MULTI is only available on standalone connections, which the constructor enforces
+          RedisCommands<String, byte[]> transaction = (RedisCommands<String, byte[]>) commands;
+          transaction.multi();
+          transaction.hmset(key, map);
+          transaction.zadd(indexKey, score, member(key));
+          TransactionResult reply = transaction.exec();
+          return reply.wasDiscarded() ? "DISCARDED" : reply.<String>get(0);
+        });
+      case "LUA":
+        return connections(key).sync(commands -> {
+          byte[][] args = new byte[map.size() * 2 + 1][];
+          args[0] = String.valueOf(score).getBytes(StandardCharsets.UTF_8);
+          int i = 1;
+          for (Map.Entry<String, byte[]> entry : map.entrySet()) {
+            args[i++] = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            args[i++] = entry.getValue();
+          }
+          return evalScript(commands, INSERT_SCRIPT, INSERT_SCRIPT_SHA, ScriptOutputType.STATUS,
+              new String[] { key, indexKey }, args);
+        });
+      default:
+        return connections(key).sync(commands -> {
+          String reply = commands.hmset(key, map);
+          addKeyToIndex(commands, key, score);
+          return reply;
+        });
+    }
   }
 
-  public void removeKeyFromIndex(StatefulRedisConnection<String, String> connection, String key) {
-    connection.sync().zrem(indexName, key);
+  private Long deleteWithIndex(String key) throws Exception {
+    String indexKey = index.indexKey(key);
+    switch (writeMode) {
+      case "PIPELINE":
+        return connections(key).async(commands -> {
+          RedisFuture<Long> remove = commands.del(key);
+          RedisFuture<Long> removed = commands.zrem(indexKey, member(key));
+          removed.get();
+          return remove.get();
+        });
+      case "MULTI":
+        return connections(key).sync(commands -> {
+          RedisCommands<String, byte[]> transaction = (RedisCommands<String, byte[]>) commands;
+          transaction.multi();
+          transaction.del(key);
+          transaction.zrem(indexKey, member(key));
+          TransactionResult reply = transaction.exec();
+          return reply.wasDiscarded() ? 0L : reply.<Long>get(0);
+        });
+      case "LUA":
+        return connections(key).sync(commands -> evalScript(commands, DELETE_SCRIPT, DELETE_SCRIPT_SHA,
+            ScriptOutputType.INTEGER, new String[] { key, indexKey }));
+      default:
+        return connections(key).sync(commands -> {
+          Long reply = commands.del(key);
+          removeKeyFromIndex(commands, key);
+          return reply;
+        });
+    }
   }
 
-  public List<String> scanKeys(StatefulRedisConnection<String, String> connection, double id, int count) {
-    return connection.sync().zrangebyscore(indexName, Range.create(id, id + count - 1));
+  public List<String> scanKeys(RedisClusterAsyncCommands<String, byte[]> commands, double id, int count) throws Exception {
+    List<ScoredValue<byte[]>> members = new ArrayList<>();
+    for (RedisFuture<List<ScoredValue<byte[]>>> f : scanRanges(commands, id, count)) {
+      members.addAll(f.get());
+    }
+    return toKeys(index.sortedKeys(members, count));
+  }
+
+  private static List<RedisFuture<List<ScoredValue<byte[]>>>> scanRanges(RedisClusterAsyncCommands<String, byte[]> commands,
+                                                                         double id, int count) {
+    Range<Double> range = Range.create(id, id + count - 1);
+    List<RedisFuture<List<ScoredValue<byte[]>>>> futures = new ArrayList<>();
+    for (String indexKey : index.indexKeys()) {
+      futures.add(commands.zrangebyscoreWithScores(indexKey, range));
+    }
+    return futures;
+  }
+
+  /*
+    Looks up the start score on the endpoint that owns the start key, then
+    queries the same score range on every endpoint and merges the replies by
+    score.  The range queries are all sent before any reply is awaited.
+   */
+  private List<String> scanEndpoints(String key, int count) throws Exception {
+    double id = connections(key).sync(commands -> commands.zscore(index.indexKey(key), member(key)));
+    List<RedisFuture<List<ScoredValue<byte[]>>>> futures = new ArrayList<>();
+    for (ConnectionManager<String, byte[], ?> endpoint : endpoints) {
+      futures.addAll(endpoint.async(commands -> scanRanges(commands, id, count)));
+    }
+    List<ScoredValue<byte[]>> members = new ArrayList<>();
+    for (RedisFuture<List<ScoredValue<byte[]>>> f : futures) {
+      members.addAll(f.get());
+    }
+    members.sort((a, b) -> Double.compare(a.getScore(), b.getScore()));
+    return toKeys(index.sortedKeys(members, count));
+  }
+
+  private static List<String> toKeys(List<byte[]> members) {
+    List<String> keys = new ArrayList<>(members.size());
+    for (byte[] member : members) {
+      keys.add(new String(member, StandardCharsets.UTF_8));
+    }
+    return keys;
+  }
+
+  /*
+    Writes the buffered load records in one pipelined batch per endpoint: an
+    HSET per record, then a single multi-member ZADD per index key.
+   */
+  private void writeLoadBatch(List<String> loadKeys, List<Map<String, byte[]>> loadValues) throws Exception {
+    Map<Integer, List<Integer>> batches = new HashMap<>();
+    for (int i = 0; i < loadKeys.size(); i++) {
+      batches.computeIfAbsent(router.route(loadKeys.get(i)), k -> new ArrayList<>()).add(i);
+    }
+
+    for (Map.Entry<Integer, List<Integer>> batch : batches.entrySet()) {
+      List<Integer> records = batch.getValue();
+      Map<String, List<ScoredValue<byte[]>>> members = new HashMap<>();
+      for (int i : records) {
+        String key = loadKeys.get(i);
+        members.computeIfAbsent(index.indexKey(key), k -> new ArrayList<>())
+            .add(ScoredValue.just(index.nextScore(sequence), member(key)));
+      }
+
+      endpoints.get(batch.getKey()).pipeline(commands -> {
+        List<RedisFuture<?>> futures = new ArrayList<>(records.size() + members.size());
+        for (int i : records) {
+          futures.add(commands.hset(loadKeys.get(i), loadValues.get(i)));
+        }
+        for (Map.Entry<String, List<ScoredValue<byte[]>>> entry : members.entrySet()) {
+          @SuppressWarnings("unchecked")
+          ScoredValue<byte[]>[] values = entry.getValue().toArray(new ScoredValue[0]);
+          futures.add(commands.zadd(entry.getKey(), values));
+        }
+        return futures;
+      });
+    }
   }
 
   @Override
-  public void disconnect() {
+  public void disconnect() throws DBException {
+    Exception failure = null;
+    try {
+      loader.flush();
+    } catch (Exception e) {
+      logger.error("Error during Hash bulk load: {}", e.getMessage(), e);
+      failure = e;
+    }
+
     synchronized (INIT_COORDINATOR) {
       int count = THREADS.decrementAndGet();
-      if (client != null && count == 0) {
+      if (clients != null && count == 0) {
+        loadRate.log(logger);
+        ValueCompressor.logRatio();
         logger.debug("Shutting down Redis client");
-        pool.close();
-        client.shutdown();
-        pool = null;
-        client = null;
+        for (ConnectionManager<String, byte[], ?> endpoint : endpoints) {
+          endpoint.close();
+        }
+        for (AbstractRedisClient client : clients) {
+          client.shutdown();
+        }
+        endpoints = null;
+        clients = null;
       }
     }
+
+    if (failure != null) {
+      throw new DBException(failure);
+    }
   }
 
   @Override
   public Status read(String table, String key, Set<String> fields, Map<String, ByteIterator> result) {
-    Map<String, String> map;
-    try (StatefulRedisConnection<String, String> connection = pool.borrowObject()) {
-      map = connection.sync().hgetall(key);
+    try {
+      if (fields == null || compressor.isRecordMode()) {
+        Map<String, byte[]> map = connections(key).sync(commands -> commands.hgetall(key));
+        putAllValues(result, map, fields);
+      } else {
+        String[] fieldNames = fields.toArray(new String[0]);
+        List<KeyValue<String, byte[]>> values = connections(key).sync(commands -> commands.hmget(key, fieldNames));
+        putAllValues(result, values);
+      }
     } catch (Exception e) {
       logger.error("Error during Hash read: {}", e.getMessage(), e);
       return Status.ERROR;
     }
 
-    if (fields == null) {
-      StringByteIterator.putAllAsByteIterators(result, map);
-    } else {
-      for (Map.Entry<String, String> entry : map.entrySet()) {
-        if (fields.contains(entry.getKey())) {
-          result.put(entry.getKey(), new StringByteIterator(entry.getValue()));
-        }
+    return result.isEmpty() ? Status.ERROR : Status.OK;
+  }
+
+  @Override
+  public CompletableFuture<Status> readAsync(String table, String key, Set<String> fields,
+                                             Map<String, ByteIterator> result, boolean alternate) {
+    try {
+      if (fields == null || compressor.isRecordMode()) {
+        return connections(key).submit(alternate, commands -> commands.hgetall(key), map -> {
+          putAllValues(result, map, fields);
+          return result.isEmpty() ? Status.ERROR : Status.OK;
+        });
       }
+      String[] fieldNames = fields.toArray(new String[0]);
+      return connections(key).submit(alternate, commands -> commands.hmget(key, fieldNames), values -> {
+        putAllValues(result, values);
+        return result.isEmpty() ? Status.ERROR : Status.OK;
+      });
+    } catch (Exception e) {
+      logger.error("Error during Hash read: {}", e.getMessage(), e);
+      return CompletableFuture.completedFuture(Status.ERROR);
     }
-    return result.isEmpty() ? Status.ERROR : Status.OK;
   }
 
   @Override
   public Status insert(String table, String key, Map<String, ByteIterator> values) {
     String result;
-    Map<String, String> map = StringByteIterator.getStringMap(values);
+    Map<String, byte[]> map = compressor.encode(toBytes(values));
+
+    if (loader.isEnabled()) {
+      try {
+        return loader.add(key, map) ? Status.OK : Status.BATCHED_OK;
+      } catch (Exception e) {
+        logger.error("Error during Hash bulk load: {}", e.getMessage(), e);
+        return Status.ERROR;
+      }
+    }
 
-    try (StatefulRedisConnection<String, String> connection = pool.borrowObject()) {
-      result = connection.sync().hmset(key, map);
-      addKeyToIndex(connection, key);
+    try {
+      result = insertWithIndex(key, map);
     } catch (Exception e) {
       logger.error("Error during Hash insert: {}", e.getMessage(), e);
       return Status.ERROR;
@@ -112,10 +403,14 @@ public class HashRecordStore implements RecordStore {
   @Override
   public Status update(String table, String key, Map<String, ByteIterator> values) {
     String result;
-    Map<String, String> map = StringByteIterator.getStringMap(values);
 
-    try (StatefulRedisConnection<String, String> connection = pool.borrowObject()) {
-      result = connection.sync().hmset(key, map);
+    try {
+      if (compressor.isRecordMode()) {
+        result = updateRecord(key, toBytes(values));
+      } else {
+        Map<String, byte[]> map = compressor.encode(toBytes(values));
+        result = connections(key).sync(commands -> commands.hmset(key, map));
+      }
     } catch (Exception e) {
       logger.error("Error during Hash update: {}", e.getMessage(), e);
       return Status.ERROR;
@@ -124,13 +419,40 @@ public class HashRecordStore implements RecordStore {
     return result.equals("OK") ? Status.OK : Status.ERROR;
   }
 
+  /*
+    Compare-and-set on the packed record: the script only writes the merged
+    record if the stored one still hashes to what was read.  The record is
+    read with a script as well, since ReadFrom routes scripts to the master
+    but a plain HGET may go to a replica that has not seen the last write.
+   */
+  private String updateRecord(String key, Map<String, byte[]> values) throws Exception {
+    byte[] field = ValueCompressor.RECORD_FIELD.getBytes(StandardCharsets.UTF_8);
+    for (int attempt = 0; attempt < UPDATE_RETRIES; attempt++) {
+      Long written = connections(key).sync(commands -> {
+        byte[] current = evalScript(commands, FETCH_SCRIPT, FETCH_SCRIPT_SHA, ScriptOutputType.VALUE,
+            new String[] { key }, field);
+        Map<String, byte[]> record = current == null ? new HashMap<>()
+            : compressor.decode(Collections.singletonMap(ValueCompressor.RECORD_FIELD, current));
+        record.putAll(values);
+        byte[] merged = compressor.encode(record).get(ValueCompressor.RECORD_FIELD);
+        byte[] expected = current == null ? new byte[0] : Digests.sha1(current).getBytes(StandardCharsets.UTF_8);
+        return evalScript(commands, UPDATE_SCRIPT, UPDATE_SCRIPT_SHA, ScriptOutputType.INTEGER,
+            new String[] { key }, field, expected, merged);
+      });
+      if (written != null && written == 1) {
+        return "OK";
+      }
+    }
+    logger.error("Hash update of {} lost {} races with concurrent updates", key, UPDATE_RETRIES);
+    return "CONFLICT";
+  }
+
   @Override
   public Status delete(String table, String key) {
     Long result;
 
-    try (StatefulRedisConnection<String, String> connection = pool.borrowObject()) {
-      result = connection.sync().del(key);
-      removeKeyFromIndex(connection, key);
+    try {
+      result = deleteWithIndex(key);
     } catch (Exception e) {
       logger.error("Error during Hash delete: {}", e.getMessage(), e);
       return Status.ERROR;
@@ -142,49 +464,22 @@ public class HashRecordStore implements RecordStore {
   @Override
   public Status scan(String table, String key, int count, Set<String> fields,
                      Vector<HashMap<String, ByteIterator>> result) {
-    try (StatefulRedisConnection<String, String> connection = pool.borrowObject()) {
-      double id = connection.sync().zscore(indexName, key);
-      List<String> keys = scanKeys(connection, id, count);
+    try {
+      List<String> keys;
+      if (endpoints.size() == 1) {
+        keys = endpoints.get(0).async(commands -> {
+          double id = commands.zscore(index.indexKey(key), member(key)).get();
+          return scanKeys(commands, id, count);
+        });
+      } else {
+        keys = scanEndpoints(key, count);
+      }
 
       if (keys.isEmpty()) {
         return Status.OK;
       }
 
-      List<CompletableFuture<HashMap<String, ByteIterator>>> futures = new ArrayList<>(keys.size());
-
-      for (String k : keys) {
-        if (fields == null) {
-          futures.add(
-              connection.async().hgetall(k).toCompletableFuture()
-                  .thenApply(map -> {
-                    HashMap<String, ByteIterator> values = new HashMap<>(map.size());
-                    StringByteIterator.putAllAsByteIterators(values, map);
-                    return values;
-                  })
-          );
-        } else {
-          futures.add(
-              connection.async().hgetall(k).toCompletableFuture()
-                  .thenApply(map -> {
-                    Map<String, String> subset = map.entrySet().stream()
-                        .filter(entry -> fields.contains(entry.getKey()))
-                        .collect(Collectors.toMap(
-                            Map.Entry::getKey,
-                            Map.Entry::getValue
-                        ));
-                    HashMap<String, ByteIterator> values = new HashMap<>();
-                    StringByteIterator.putAllAsByteIterators(values, subset);
-                    return values;
-                  })
-          );
-        }
-      }
-
-      CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
-
-      for (CompletableFuture<HashMap<String, ByteIterator>> f : futures) {
-        result.add(f.join());
-      }
+      fetchRecords(keys, fields, result);
 
       return Status.OK;
     } catch (Exception e) {
@@ -192,4 +487,82 @@ public class HashRecordStore implements RecordStore {
       return Status.ERROR;
     }
   }
+
+  /*
+    Fetches the scanned records with one pipeline per endpoint and returns
+    them in scan order.
+   */
+  private void fetchRecords(List<String> keys, Set<String> fields, Vector<HashMap<String, ByteIterator>> result) throws Exception {
+    if (endpoints.size() == 1) {
+      result.addAll(fetchRecords(endpoints.get(0), keys, fields));
+      return;
+    }
+
+    Map<Integer, List<Integer>> batches = new HashMap<>();
+    for (int i = 0; i < keys.size(); i++) {
+      batches.computeIfAbsent(router.route(keys.get(i)), k -> new ArrayList<>()).add(i);
+    }
+    List<HashMap<String, ByteIterator>> records = new ArrayList<>(Collections.nCopies(keys.size(), null));
+    for (Map.Entry<Integer, List<Integer>> batch : batches.entrySet()) {
+      List<String> batchKeys = new ArrayList<>(batch.getValue().size());
+      for (int i : batch.getValue()) {
+        batchKeys.add(keys.get(i));
+      }
+      List<HashMap<String, ByteIterator>> fetched = fetchRecords(endpoints.get(batch.getKey()), batchKeys, fields);
+      for (int n = 0; n < fetched.size(); n++) {
+        records.set(batch.getValue().get(n), fetched.get(n));
+      }
+    }
+    result.addAll(records);
+  }
+
+  private List<HashMap<String, ByteIterator>> fetchRecords(ConnectionManager<String, byte[], ?> connections,
+                                                           List<String> keys, Set<String> fields) throws Exception {
+    List<HashMap<String, ByteIterator>> result = new ArrayList<>(keys.size());
+    if (fields == null || compressor.isRecordMode()) {
+      List<Map<String, byte[]>> records = connections.pipeline(commands -> {
+        List<RedisFuture<Map<String, byte[]>>> futures = new ArrayList<>(keys.size());
+        for (String k : keys) {
+          futures.add(commands.hgetall(k));
+        }
+        return futures;
+      });
+      for (Map<String, byte[]> map : records) {
+        HashMap<String, ByteIterator> values = new HashMap<>(map.size());
+        putAllValues(values, map, fields);
+        result.add(values);
+      }
+    } else {
+      String[] fieldNames = fields.toArray(new String[0]);
+      List<List<KeyValue<String, byte[]>>> records = connections.pipeline(commands -> {
+        List<RedisFuture<List<KeyValue<String, byte[]>>>> futures = new ArrayList<>(keys.size());
+        for (String k : keys) {
+          futures.add(commands.hmget(k, fieldNames));
+        }
+        return futures;
+      });
+      for (List<KeyValue<String, byte[]>> record : records) {
+        HashMap<String, ByteIterator> values = new HashMap<>(fieldNames.length);
+        putAllValues(values, record);
+        result.add(values);
+      }
+    }
+    return result;
+  }
+
+  private static void putAllValues(Map<String, ByteIterator> result, Map<String, byte[]> values, Set<String> fields) {
+    for (Map.Entry<String, byte[]> entry : compressor.decode(values).entrySet()) {
+      if (fields == null || fields.contains(entry.getKey())) {
+        result.put(entry.getKey(), new ByteArrayByteIterator(entry.getValue()));
+      }
+    }
+  }
+
+  private static void putAllValues(Map<String, ByteIterator> result, List<KeyValue<String, byte[]>> values) {
+    for (KeyValue<String, byte[]> value : values) {
+      if (value.hasValue()) {
+        result.put(value.getKey(), new ByteArrayByteIterator(compressor.decompress(value.getValue())));
+      }
+    }
+  }
 }
@@ -1,19 +1,23 @@
 package com.redislabs.ycsb;
 
 import com.codelry.util.ycsb.ByteIterator;
+import com.codelry.util.ycsb.DBException;
 import com.codelry.util.ycsb.Status;
 import com.codelry.util.ycsb.StringByteIterator;
 
-import com.redis.lettucemod.RedisModulesClient;
-import com.redis.lettucemod.api.StatefulRedisModulesConnection;
+import io.lettuce.core.AbstractRedisClient;
+import io.lettuce.core.KeyValue;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.search.AggregationReply;
 import io.lettuce.core.search.SearchReply;
+import io.lettuce.core.search.arguments.AggregateArgs;
+import io.lettuce.core.search.arguments.SearchArgs;
+import io.lettuce.core.search.arguments.SortByArgs;
 
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.stream.Collectors;
 
-import org.apache.commons.pool2.impl.GenericObjectPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -22,10 +26,15 @@ public class HashSearchRecordStore implements RecordStore {
 
   private static final AtomicInteger THREADS = new AtomicInteger(0);
   private static final Object INIT_COORDINATOR = new Object();
-  private static GenericObjectPool<StatefulRedisModulesConnection<String, String>> pool;
-  private static RedisModulesClient client;
+  private static ConnectionManager<String, String, ?> connections;
+  private static AbstractRedisClient client;
+  private static final BulkLoader.LoadRate loadRate = new BulkLoader.LoadRate();
 
   private final String indexName;
+  private final String scanMode;
+  private final int pageSize;
+  private final boolean sorted;
+  private final BulkLoader<String> loader;
 
   HashSearchRecordStore(RedisConfig redisConfig, int poolMaxSize) {
     synchronized (INIT_COORDINATOR) {
@@ -35,52 +44,101 @@ public class HashSearchRecordStore implements RecordStore {
 
         RedisClientBuilder clientBuilder = new RedisClientBuilder.Builder().redisConfig(redisConfig).build();
 
-        client = clientBuilder.getModulesClient();
-        pool = clientBuilder.getModulesPool(client, poolMaxSize);
+        client = redisConfig.isClusterEnabled() ? clientBuilder.getModulesClusterClient() : clientBuilder.getModulesClient();
+        connections = clientBuilder.getConnectionManager(client, poolMaxSize);
       }
     }
 
     this.indexName = redisConfig.getIndexHash();
+    this.scanMode = redisConfig.getSearchScanMode().toUpperCase();
+    this.pageSize = Math.max(1, redisConfig.getSearchPageSize());
+    this.sorted = redisConfig.isSearchSorted();
+    this.loader = new BulkLoader<>(redisConfig.isBulkLoad() ? redisConfig.getLoadBatch() : 0, loadRate, this::writeLoadBatch);
   }
 
   private String keyNumber(String key) {
-    return key.substring(4);
+    return KeyLayout.keyNumber(key);
+  }
+
+  /*
+    Writes the buffered load records as one pipelined batch of HSETs.  The
+    search index picks them up on the server side.
+   */
+  private void writeLoadBatch(List<String> loadKeys, List<Map<String, String>> loadValues) throws Exception {
+    connections.pipeline(commands -> {
+      List<RedisFuture<Long>> futures = new ArrayList<>(loadKeys.size());
+      for (int i = 0; i < loadKeys.size(); i++) {
+        futures.add(commands.hset(loadKeys.get(i), loadValues.get(i)));
+      }
+      return futures;
+    });
   }
 
   @Override
-  public void disconnect() {
+  public void disconnect() throws DBException {
+    Exception failure = null;
+    try {
+      loader.flush();
+    } catch (Exception e) {
+      logger.error("Error during Hash bulk load: {}", e.getMessage(), e);
+      failure = e;
+    }
+
     synchronized (INIT_COORDINATOR) {
       int count = THREADS.decrementAndGet();
       if (client != null && count == 0) {
+        loadRate.log(logger);
         logger.debug("Shutting down Redis client");
-        pool.close();
+        connections.close();
         client.shutdown();
-        pool = null;
+        connections = null;
         client = null;
       }
     }
+
+    if (failure != null) {
+      throw new DBException(failure);
+    }
   }
 
   @Override
   public Status read(String table, String key, Set<String> fields, Map<String, ByteIterator> result) {
-    Map<String, String> map;
-    try (StatefulRedisModulesConnection<String, String> connection = pool.borrowObject()) {
-      map = connection.sync().hgetall(key);
+    try {
+      if (fields == null) {
+        Map<String, String> map = connections.sync(commands -> commands.hgetall(key));
+        StringByteIterator.putAllAsByteIterators(result, map);
+      } else {
+        String[] fieldNames = fields.toArray(new String[0]);
+        List<KeyValue<String, String>> values = connections.sync(commands -> commands.hmget(key, fieldNames));
+        putAllValues(result, values);
+      }
     } catch (Exception e) {
       logger.error("Error during Hash read: {}", e.getMessage(), e);
       return Status.ERROR;
     }
 
-    if (fields == null) {
-      StringByteIterator.putAllAsByteIterators(result, map);
-    } else {
-      for (Map.Entry<String, String> entry : map.entrySet()) {
-        if (fields.contains(entry.getKey())) {
-          result.put(entry.getKey(), new StringByteIterator(entry.getValue()));
-        }
+    return result.isEmpty() ? Status.ERROR : Status.OK;
+  }
+
+  @Override
+  public CompletableFuture<Status> readAsync(String table, String key, Set<String> fields,
+                                             Map<String, ByteIterator> result, boolean alternate) {
+    try {
+      if (fields == null) {
+        return connections.submit(alternate, commands -> commands.hgetall(key), map -> {
+          StringByteIterator.putAllAsByteIterators(result, map);
+          return result.isEmpty() ? Status.ERROR : Status.OK;
+        });
       }
+      String[] fieldNames = fields.toArray(new String[0]);
+      return connections.submit(alternate, commands -> commands.hmget(key, fieldNames), values -> {
+        putAllValues(result, values);
+        return result.isEmpty() ? Status.ERROR : Status.OK;
+      });
+    } catch (Exception e) {
+      logger.error("Error during Hash read: {}", e.getMessage(), e);
+      return CompletableFuture.completedFuture(Status.ERROR);
     }
-    return result.isEmpty() ? Status.ERROR : Status.OK;
   }
 
   @Override
@@ -89,8 +147,17 @@ public class HashSearchRecordStore implements RecordStore {
     Map<String, String> map = StringByteIterator.getStringMap(values);
     map.put("id", keyNumber(key));
 
-    try (StatefulRedisModulesConnection<String, String> connection = pool.borrowObject()) {
-      result = connection.sync().hmset(key, map);
+    if (loader.isEnabled()) {
+      try {
+        return loader.add(key, map) ? Status.OK : Status.BATCHED_OK;
+      } catch (Exception e) {
+        logger.error("Error during Hash bulk load: {}", e.getMessage(), e);
+        return Status.ERROR;
+      }
+    }
+
+    try {
+      result = connections.sync(commands -> commands.hmset(key, map));
     } catch (Exception e) {
       logger.error("Error during Hash insert: {}", e.getMessage(), e);
       return Status.ERROR;
@@ -105,8 +172,8 @@ public class HashSearchRecordStore implements RecordStore {
     Map<String, String> map = StringByteIterator.getStringMap(values);
     map.put("id", keyNumber(key));
 
-    try (StatefulRedisModulesConnection<String, String> connection = pool.borrowObject()) {
-      result = connection.sync().hmset(key, map);
+    try {
+      result = connections.sync(commands -> commands.hmset(key, map));
     } catch (Exception e) {
       logger.error("Error during Hash update: {}", e.getMessage(), e);
       return Status.ERROR;
@@ -119,8 +186,8 @@ public class HashSearchRecordStore implements RecordStore {
   public Status delete(String table, String key) {
     Long result;
 
-    try (StatefulRedisModulesConnection<String, String> connection = pool.borrowObject()) {
-      result = connection.sync().del(key);
+    try {
+      result = connections.sync(commands -> commands.del(key));
     } catch (Exception e) {
       logger.error("Error during Hash delete: {}", e.getMessage(), e);
       return Status.ERROR;
@@ -132,59 +199,151 @@ public class HashSearchRecordStore implements RecordStore {
   @Override
   public Status scan(String table, String key, int count, Set<String> fields,
                      Vector<HashMap<String, ByteIterator>> result) {
-    try (StatefulRedisModulesConnection<String, String> connection = pool.borrowObject()) {
-      String query = String.format("@id:[%s +inf] LIMIT 0 %d", keyNumber(key), count);
+    try {
+      String query = String.format("@id:[%s +inf]", keyNumber(key));
 
-      CompletableFuture<SearchReply<String, String>> searchFuture =
-          connection.async().ftSearch(indexName, query).toCompletableFuture();
+      if (scanMode.equals("AGGREGATE")) {
+        aggregateScan(query, count, fields, result);
+        return Status.OK;
+      }
 
-      SearchReply<String, String> searchResult = searchFuture.join();
+      boolean inlineScan = scanMode.equals("INLINE");
+      SearchArgs.Builder<String, String> args = SearchArgs.<String, String>builder().limit(0, count);
+      if (sorted) {
+        args.sortBy(SortByArgs.<String>builder().attribute("id").build());
+      }
+      if (!inlineScan) {
+        args.noContent();
+      } else if (fields != null) {
+        for (String field : fields) {
+          args.returnField(field);
+        }
+      }
+      SearchArgs<String, String> searchArgs = args.build();
 
-      List<CompletableFuture<HashMap<String, ByteIterator>>> futures = new ArrayList<>();
+      SearchReply<String, String> searchResult = connections.async(commands -> commands.ftSearch(indexName, query, searchArgs).get());
 
-      for (SearchReply.SearchResult<String, String> r : searchResult.getResults()) {
-        String docId = r.getId();
-
-        CompletableFuture<HashMap<String, ByteIterator>> fetchFuture;
-        if (fields == null) {
-          fetchFuture =
-              connection.async().hgetall(docId)
-                  .toCompletableFuture()
-                  .thenApply(map -> {
-                    HashMap<String, ByteIterator> values = new HashMap<>(map.size());
-                    StringByteIterator.putAllAsByteIterators(values, map);
-                    return values;
-                  });
-        } else {
-          fetchFuture =
-              connection.async().hgetall(docId)
-                  .toCompletableFuture()
-                  .thenApply(map -> {
-                    Map<String, String> subset = map.entrySet().stream()
-                        .filter(entry -> fields.contains(entry.getKey()))
-                        .collect(Collectors.toMap(
-                            Map.Entry::getKey,
-                            Map.Entry::getValue
-                        ));
-                    HashMap<String, ByteIterator> values = new HashMap<>();
-                    StringByteIterator.putAllAsByteIterators(values, subset);
-                    return values;
-                  });
+      if (inlineScan) {
+        for (SearchReply.SearchResult<String, String> r : searchResult.getResults()) {
+          HashMap<String, ByteIterator> values = new HashMap<>(r.getFields().size());
+          StringByteIterator.putAllAsByteIterators(values, r.getFields());
+          result.add(values);
         }
-
-        futures.add(fetchFuture);
+        return Status.OK;
       }
 
-      CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+      List<String> keys = new ArrayList<>(searchResult.getResults().size());
+      for (SearchReply.SearchResult<String, String> r : searchResult.getResults()) {
+        keys.add(r.getId());
+      }
 
-      for (CompletableFuture<HashMap<String, ByteIterator>> f : futures) {
-        result.add(f.join());
+      if (keys.isEmpty()) {
+        return Status.OK;
       }
 
+      fetchRecords(keys, fields, result);
+
       return Status.OK;
     } catch (Exception e) {
       logger.error("Error during Hash search: {}", e.getMessage(), e);
       return Status.ERROR;
     }
   }
+
+  /*
+    Runs the range as FT.AGGREGATE WITHCURSOR and adds each page to the result
+    as it is read, so only one page is buffered at a time.  The cursor is
+    deleted if the scan has enough rows before the server runs out of pages.
+   */
+  private void aggregateScan(String query, int count, Set<String> fields,
+                             Vector<HashMap<String, ByteIterator>> result) throws Exception {
+    AggregateArgs.Builder<String, String> args = AggregateArgs.<String, String>builder();
+    if (fields == null) {
+      args.loadAll();
+    } else {
+      for (String field : fields) {
+        args.load(field);
+      }
+      if (sorted && !fields.contains("id")) {
+        args.load("id");
+      }
+    }
+    if (sorted) {
+      args.sortBy(AggregateArgs.SortBy.of("@id", AggregateArgs.SortDirection.ASC));
+    }
+    AggregateArgs<String, String> aggregateArgs = args
+        .limit(0, count)
+        .withCursor(AggregateArgs.WithCursor.of((long) pageSize))
+        .build();
+
+    connections.async(commands -> {
+      AggregationReply<String, String> page = commands.ftAggregate(indexName, query, aggregateArgs).get();
+      int remaining = count;
+      while (true) {
+        for (SearchReply<String, String> reply : page.getReplies()) {
+          for (SearchReply.SearchResult<String, String> r : reply.getResults()) {
+            if (remaining <= 0) {
+              break;
+            }
+            HashMap<String, ByteIterator> values = new HashMap<>(r.getFields().size());
+            StringByteIterator.putAllAsByteIterators(values, r.getFields());
+            if (fields != null) {
+              values.keySet().retainAll(fields);
+            }
+            result.add(values);
+            remaining--;
+          }
+        }
+        long cursorId = page.getCursorId();
+        if (cursorId == 0) {
+          break;
+        }
+        if (remaining <= 0) {
+          commands.ftCursordel(indexName, cursorId).get();
+          break;
+        }
+        page = commands.ftCursorread(indexName, cursorId).get();
+      }
+      return null;
+    });
+  }
+
+  private void fetchRecords(List<String> keys, Set<String> fields, Vector<HashMap<String, ByteIterator>> result) throws Exception {
+    if (fields == null) {
+      List<Map<String, String>> records = connections.pipeline(commands -> {
+        List<RedisFuture<Map<String, String>>> futures = new ArrayList<>(keys.size());
+        for (String k : keys) {
+          futures.add(commands.hgetall(k));
+        }
+        return futures;
+      });
+      for (Map<String, String> map : records) {
+        HashMap<String, ByteIterator> values = new HashMap<>(map.size());
+        StringByteIterator.putAllAsByteIterators(values, map);
+        result.add(values);
+      }
+    } else {
+      String[] fieldNames = fields.toArray(new String[0]);
+      List<List<KeyValue<String, String>>> records = connections.pipeline(commands -> {
+        List<RedisFuture<List<KeyValue<String, String>>>> futures = new ArrayList<>(keys.size());
+        for (String k : keys) {
+          futures.add(commands.hmget(k, fieldNames));
+        }
+        return futures;
+      });
+      for (List<KeyValue<String, String>> record : records) {
+        HashMap<String, ByteIterator> values = new HashMap<>(fieldNames.length);
+        putAllValues(values, record);
+        result.add(values);
+      }
+    }
+  }
+
+  private static void putAllValues(Map<String, ByteIterator> result, List<KeyValue<String, String>> values) {
+    for (KeyValue<String, String> value : values) {
+      if (value.hasValue()) {
+        result.put(value.getKey(), new StringByteIterator(value.getValue()));
+      }
+    }
+  }
 }
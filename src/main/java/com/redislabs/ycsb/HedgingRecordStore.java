@@ -0,0 +1,210 @@
+package com.redislabs.ycsb;
+
+import com.codelry.util.ycsb.ByteIterator;
+import com.codelry.util.ycsb.DBException;
+import com.codelry.util.ycsb.Status;
+
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+  Hedged reads in front of another record store.
+
+  The read is issued from the caller's thread with the store's non-blocking
+  read, and the caller waits for the reply with the hedge delay as its
+  deadline, so there is no hand-off to another thread.  If no reply has
+  arrived by then, the caller issues the same read again on a different
+  connection: the pool hands out another connection because the first one is
+  still held, and the multiplexed manager picks the next one.  With a replica
+  read policy the second read may land on another node.  The first
+  successful reply is returned and the other read is cancelled.
+
+  The hedge delay tracks a percentile of recent read latencies, recomputed
+  over a fixed window of samples, and never drops below the configured
+  minimum.  A read won by its hedge counts as the time the first read was
+  outstanding.  Until the first window is full the configured initial delay
+  is used.  Writes and scans pass straight through.
+ */
+public class HedgingRecordStore implements RecordStore {
+  private static final Logger logger = LoggerFactory.getLogger(HedgingRecordStore.class);
+
+  private static final int SAMPLE_WINDOW = 1024;
+
+  private static final AtomicInteger THREADS = new AtomicInteger(0);
+  private static final Object INIT_COORDINATOR = new Object();
+  private static final AtomicLongArray samples = new AtomicLongArray(SAMPLE_WINDOW);
+  private static final AtomicLong sampleCount = new AtomicLong(0);
+  private static volatile long delayMicros;
+  private static double percentile;
+  private static long minDelayMicros;
+
+  private static final AtomicLong reads = new AtomicLong(0);
+  private static final AtomicLong hedges = new AtomicLong(0);
+  private static final AtomicLong hedgeWins = new AtomicLong(0);
+
+  private final RecordStore store;
+
+  private static final class Attempt {
+    private final boolean hedge;
+    private final Map<String, ByteIterator> values = new HashMap<>();
+    private CompletableFuture<Status> reply;
+    private Status status;
+
+    private Attempt(boolean hedge) {
+      this.hedge = hedge;
+    }
+  }
+
+  HedgingRecordStore(RecordStore store, RedisConfig redisConfig) {
+    if (redisConfig.isAsyncEnabled()) {
+      // a hedge would queue on the same connection behind the read it races
+      throw new IllegalArgumentException("Hedged reads are not supported with the async record store");
+    }
+    this.store = store;
+
+    synchronized (INIT_COORDINATOR) {
+      if (THREADS.incrementAndGet() == 1) {
+        percentile = redisConfig.getHedgePercentile();
+        minDelayMicros = redisConfig.getHedgeDelayMin();
+        delayMicros = Math.max(minDelayMicros, redisConfig.getHedgeDelay());
+        logger.debug("Initializing hedged reads: percentile: {}, initial delay: {} us", percentile, delayMicros);
+      }
+    }
+  }
+
+  private static void recordSample(long micros) {
+    long n = sampleCount.getAndIncrement();
+    samples.set((int) (n % SAMPLE_WINDOW), micros);
+    if ((n + 1) % SAMPLE_WINDOW == 0) {
+      long[] window = new long[SAMPLE_WINDOW];
+      for (int i = 0; i < SAMPLE_WINDOW; i++) {
+        window[i] = samples.get(i);
+      }
+      Arrays.sort(window);
+      int rank = (int) Math.min(SAMPLE_WINDOW - 1, Math.ceil(percentile / 100.0 * SAMPLE_WINDOW) - 1);
+      delayMicros = Math.max(minDelayMicros, window[Math.max(0, rank)]);
+    }
+  }
+
+  private void issue(Attempt attempt, CompletableFuture<Attempt> winner, AtomicInteger pending,
+                     String table, String key, Set<String> fields) {
+    attempt.reply = store.readAsync(table, key, fields, attempt.values, attempt.hedge);
+    attempt.reply.whenComplete((status, error) -> {
+      if (error != null && !(error instanceof CancellationException)) {
+        logger.error("Error during hedged read: {}", error.getMessage(), error);
+      }
+      attempt.status = error == null ? status : Status.ERROR;
+      // an error only wins once every attempt has failed
+      if (attempt.status.isOk() || pending.decrementAndGet() == 0) {
+        winner.complete(attempt);
+      }
+    });
+  }
+
+  @Override
+  public void disconnect() throws DBException {
+    try {
+      store.disconnect();
+    } finally {
+      synchronized (INIT_COORDINATOR) {
+        if (THREADS.decrementAndGet() == 0) {
+          long total = reads.getAndSet(0);
+          long hedged = hedges.getAndSet(0);
+          if (total > 0) {
+            logger.info("Hedged reads: {} of {} ({}%), hedge wins: {}, final delay: {} us",
+                hedged, total, String.format("%.2f", hedged * 100.0 / total), hedgeWins.getAndSet(0), delayMicros);
+          }
+        }
+      }
+    }
+  }
+
+  @Override
+  public Status read(String table, String key, Set<String> fields, Map<String, ByteIterator> result) {
+    CompletableFuture<Attempt> winner = new CompletableFuture<>();
+    AtomicInteger pending = new AtomicInteger(1);
+    Attempt primary = new Attempt(false);
+    Attempt hedge = null;
+    Attempt attempt;
+    long start = System.nanoTime();
+
+    reads.incrementAndGet();
+    try {
+      issue(primary, winner, pending, table, key, fields);
+      try {
+        attempt = winner.get(delayMicros, TimeUnit.MICROSECONDS);
+      } catch (TimeoutException e) {
+        if (!winner.isDone()) {
+          pending.incrementAndGet();
+          hedges.incrementAndGet();
+          hedge = new Attempt(true);
+          issue(hedge, winner, pending, table, key, fields);
+        }
+        attempt = winner.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      cancel(primary);
+      cancel(hedge);
+      return Status.ERROR;
+    } catch (ExecutionException e) {
+      logger.error("Error during hedged read: {}", e.getMessage(), e);
+      return Status.ERROR;
+    }
+
+    recordSample(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+    if (attempt.hedge) {
+      cancel(primary);
+      if (attempt.status.isOk()) {
+        hedgeWins.incrementAndGet();
+      }
+    } else {
+      cancel(hedge);
+    }
+    result.putAll(attempt.values);
+    return attempt.status;
+  }
+
+  private static void cancel(Attempt attempt) {
+    if (attempt != null && attempt.reply != null) {
+      attempt.reply.cancel(true);
+    }
+  }
+
+  @Override
+  public CompletableFuture<Status> readAsync(String table, String key, Set<String> fields,
+                                             Map<String, ByteIterator> result, boolean alternate) {
+    return store.readAsync(table, key, fields, result, alternate);
+  }
+
+  @Override
+  public Status insert(String table, String key, Map<String, ByteIterator> values) {
+    return store.insert(table, key, values);
+  }
+
+  @Override
+  public Status update(String table, String key, Map<String, ByteIterator> values) {
+    return store.update(table, key, values);
+  }
+
+  @Override
+  public Status delete(String table, String key) {
+    return store.delete(table, key);
+  }
+
+  @Override
+  public Status scan(String table, String key, int count, Set<String> fields,
+                     Vector<HashMap<String, ByteIterator>> result) {
+    return store.scan(table, key, count, fields, result);
+  }
+}
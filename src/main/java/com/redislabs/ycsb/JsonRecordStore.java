@@ -1,23 +1,38 @@
 package com.redislabs.ycsb;
 
 import com.codelry.util.ycsb.ByteIterator;
+import com.codelry.util.ycsb.DBException;
 import com.codelry.util.ycsb.Status;
 
 import com.codelry.util.ycsb.StringByteIterator;
-import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.module.SimpleModule;
 
-import com.redis.lettucemod.RedisModulesClient;
-import com.redis.lettucemod.api.StatefulRedisModulesConnection;
+import io.lettuce.core.AbstractRedisClient;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import io.lettuce.core.cluster.api.sync.RedisClusterCommands;
+import io.lettuce.core.codec.StringCodec;
 import io.lettuce.core.json.JsonPath;
+import io.lettuce.core.output.ByteArrayOutput;
+import io.lettuce.core.output.StatusOutput;
+import io.lettuce.core.protocol.CommandArgs;
+import io.lettuce.core.protocol.CommandType;
+import io.lettuce.core.search.AggregationReply;
 import io.lettuce.core.search.SearchReply;
+import io.lettuce.core.search.arguments.AggregateArgs;
+import io.lettuce.core.search.arguments.SearchArgs;
+import io.lettuce.core.search.arguments.SortByArgs;
 
+import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicInteger;
 
-import org.apache.commons.pool2.impl.GenericObjectPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -26,12 +41,18 @@ public class JsonRecordStore implements RecordStore {
 
   private static final AtomicInteger THREADS = new AtomicInteger(0);
   private static final Object INIT_COORDINATOR = new Object();
-  private static GenericObjectPool<StatefulRedisModulesConnection<String, String>> pool;
-  private static RedisModulesClient client;
+  private static ConnectionManager<String, String, ?> connections;
+  private static AbstractRedisClient client;
+  private static final BulkLoader.LoadRate loadRate = new BulkLoader.LoadRate();
 
   private final String indexName;
+  private final String scanMode;
+  private final int pageSize;
+  private final boolean sorted;
+  private final boolean pathUpdates;
   private final ObjectMapper mapper = new ObjectMapper();
-  private final TypeReference<Map<String, ByteIterator>> typeRef = new TypeReference<Map<String, ByteIterator>>() {};
+  private final JsonFactory jsonFactory = mapper.getFactory();
+  private final BulkLoader<Object> loader;
 
   JsonRecordStore(RedisConfig redisConfig, int poolMaxSize) {
     synchronized (INIT_COORDINATOR) {
@@ -41,71 +62,224 @@ public class JsonRecordStore implements RecordStore {
 
         RedisClientBuilder clientBuilder = new RedisClientBuilder.Builder().redisConfig(redisConfig).build();
 
-        client = clientBuilder.getModulesClient();
-        pool = clientBuilder.getModulesPool(client, poolMaxSize);
+        client = redisConfig.isClusterEnabled() ? clientBuilder.getModulesClusterClient() : clientBuilder.getModulesClient();
+        connections = clientBuilder.getConnectionManager(client, poolMaxSize);
       }
     }
 
     this.indexName = redisConfig.getIndexJson();
+    this.scanMode = redisConfig.getSearchScanMode().toUpperCase();
+    this.pageSize = Math.max(1, redisConfig.getSearchPageSize());
+    this.sorted = redisConfig.isSearchSorted();
+    this.pathUpdates = redisConfig.getJsonUpdateMode().equalsIgnoreCase("PATH");
     SimpleModule serializer = new SimpleModule("ByteIteratorSerializer");
     SimpleModule deserializer = new SimpleModule("ByteIteratorDeserializer");
     serializer.addSerializer(ByteIterator.class, new ByteIteratorSerializer());
     deserializer.addDeserializer(ByteIterator.class, new ByteIteratorDeserializer());
     this.mapper.registerModule(serializer);
     this.mapper.registerModule(deserializer);
+    this.loader = new BulkLoader<>(redisConfig.isBulkLoad() ? redisConfig.getLoadBatch() : 0, loadRate, this::writeLoadBatch);
   }
 
-  private long hashKey(String key) {
-    return Integer.toUnsignedLong(key.hashCode());
+  private long keyNumber(String key) {
+    return Long.parseLong(KeyLayout.keyNumber(key));
+  }
+
+  /*
+    JSON.GET is dispatched with a raw output so the reply bytes reach the
+    streaming parser as they came off the wire, instead of being parsed into
+    a Lettuce JSON tree and serialized back to a String first.
+   */
+  private static CommandArgs<String, String> jsonGetArgs(String key) {
+    return new CommandArgs<>(StringCodec.UTF8).addKey(key).add("$");
+  }
+
+  private static byte[] jsonGetRaw(RedisClusterCommands<String, String> commands, String key) {
+    return commands.dispatch(CommandType.JSON_GET, new ByteArrayOutput<>(StringCodec.UTF8), jsonGetArgs(key));
+  }
+
+  private static CommandArgs<String, String> jsonGetArgs(String key, Collection<String> paths) {
+    CommandArgs<String, String> args = new CommandArgs<>(StringCodec.UTF8).addKey(key);
+    for (String path : paths) {
+      args.add(path);
+    }
+    return args;
+  }
+
+  private static byte[] jsonGetRaw(RedisClusterCommands<String, String> commands, String key, Collection<String> paths) {
+    return commands.dispatch(CommandType.JSON_GET, new ByteArrayOutput<>(StringCodec.UTF8), jsonGetArgs(key, paths));
+  }
+
+  private static RedisFuture<byte[]> jsonGetRaw(RedisClusterAsyncCommands<String, String> commands, String key) {
+    return commands.dispatch(CommandType.JSON_GET, new ByteArrayOutput<>(StringCodec.UTF8), jsonGetArgs(key));
+  }
+
+  private static RedisFuture<byte[]> jsonGetRaw(RedisClusterAsyncCommands<String, String> commands, String key, Collection<String> paths) {
+    return commands.dispatch(CommandType.JSON_GET, new ByteArrayOutput<>(StringCodec.UTF8), jsonGetArgs(key, paths));
+  }
+
+  /*
+    Decodes a JSON.GET $ reply, which wraps the document in a one element
+    array, into the record map.
+   */
+  private boolean readDocument(byte[] reply, Set<String> fields, Map<String, ByteIterator> result) throws IOException {
+    if (reply == null) {
+      return false;
+    }
+    try (JsonParser parser = jsonFactory.createParser(reply)) {
+      if (parser.nextToken() != JsonToken.START_ARRAY || parser.nextToken() != JsonToken.START_OBJECT) {
+        return false;
+      }
+      ByteIteratorDeserializer.readObject(parser, fields, result);
+      return true;
+    }
+  }
+
+  /*
+    Decodes a multi-path JSON.GET reply.  With one path Redis returns the
+    array of matches directly, with several it returns an object keyed by
+    path.
+   */
+  private void readPaths(byte[] reply, Map<String, String> pathFields, Map<String, ByteIterator> result) throws IOException {
+    if (reply == null) {
+      return;
+    }
+    try (JsonParser parser = jsonFactory.createParser(reply)) {
+      JsonToken token = parser.nextToken();
+      if (token == JsonToken.START_ARRAY) {
+        ByteIteratorDeserializer.readFirstElement(parser, pathFields.values().iterator().next(), result);
+      } else if (token == JsonToken.START_OBJECT) {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+          String field = pathFields.get(parser.currentName());
+          if (parser.nextToken() == JsonToken.START_ARRAY) {
+            ByteIteratorDeserializer.readFirstElement(parser, field, result);
+          } else {
+            parser.skipChildren();
+          }
+        }
+      }
+    }
+  }
+
+  private static byte[] jsonString(String value) {
+    byte[] quoted = JsonStringEncoder.getInstance().quoteAsUTF8(value);
+    byte[] encoded = new byte[quoted.length + 2];
+    encoded[0] = '"';
+    System.arraycopy(quoted, 0, encoded, 1, quoted.length);
+    encoded[encoded.length - 1] = '"';
+    return encoded;
+  }
+
+  /*
+    Writes the buffered load records as one pipelined batch of JSON.SETs.
+    Each document is serialized once here and sent as is.
+   */
+  private void writeLoadBatch(List<String> loadKeys, List<Map<String, Object>> loadValues) throws Exception {
+    List<CommandArgs<String, String>> batch = new ArrayList<>(loadKeys.size());
+    for (int i = 0; i < loadKeys.size(); i++) {
+      batch.add(new CommandArgs<>(StringCodec.UTF8).addKey(loadKeys.get(i)).add("$")
+          .add(mapper.writeValueAsString(loadValues.get(i))));
+    }
+    connections.pipeline(commands -> {
+      List<RedisFuture<String>> futures = new ArrayList<>(batch.size());
+      for (CommandArgs<String, String> args : batch) {
+        futures.add(commands.dispatch(CommandType.JSON_SET, new StatusOutput<>(StringCodec.UTF8), args));
+      }
+      return futures;
+    });
   }
 
   @Override
-  public void disconnect() {
+  public void disconnect() throws DBException {
+    Exception failure = null;
+    try {
+      loader.flush();
+    } catch (Exception e) {
+      logger.error("Error during JSON bulk load: {}", e.getMessage(), e);
+      failure = e;
+    }
+
     synchronized (INIT_COORDINATOR) {
       int count = THREADS.decrementAndGet();
       if (client != null && count == 0) {
+        loadRate.log(logger);
         logger.debug("Shutting down Redis client");
-        pool.close();
+        connections.close();
         client.shutdown();
-        pool = null;
+        connections = null;
         client = null;
       }
     }
+
+    if (failure != null) {
+      throw new DBException(failure);
+    }
   }
 
   @Override
   public Status read(String table, String key, Set<String> fields, Map<String, ByteIterator> result) {
-    Map<String, ByteIterator> map;
-
-    try (StatefulRedisModulesConnection<String, String> connection = pool.borrowObject()) {
-      String value = connection.sync().jsonGet(key, JsonPath.of("$")).get(0).asJsonArray().getFirst().toString();
-      map = mapper.readValue(value, typeRef);
+    try {
+      if (fields == null) {
+        byte[] reply = connections.sync(commands -> jsonGetRaw(commands, key));
+        readDocument(reply, null, result);
+      } else if (!fields.isEmpty()) {
+        Map<String, String> pathFields = new HashMap<>(fields.size());
+        for (String field : fields) {
+          pathFields.put("$." + field, field);
+        }
+        byte[] reply = connections.sync(commands -> jsonGetRaw(commands, key, pathFields.keySet()));
+        readPaths(reply, pathFields, result);
+      }
     } catch (Exception e) {
       logger.error("Error during JSON read: {}", e.getMessage(), e);
       return Status.ERROR;
     }
 
-    if (fields == null) {
-      result = map;
-    } else {
-      for (Map.Entry<String, ByteIterator> entry : map.entrySet()) {
-        if (fields.contains(entry.getKey())) {
-          result.put(entry.getKey(), entry.getValue());
+    return result.isEmpty() ? Status.ERROR : Status.OK;
+  }
+
+  @Override
+  public CompletableFuture<Status> readAsync(String table, String key, Set<String> fields,
+                                             Map<String, ByteIterator> result, boolean alternate) {
+    try {
+      if (fields == null) {
+        return connections.submit(alternate, commands -> jsonGetRaw(commands, key), reply -> {
+          readDocument(reply, null, result);
+          return result.isEmpty() ? Status.ERROR : Status.OK;
+        });
+      } else if (!fields.isEmpty()) {
+        Map<String, String> pathFields = new HashMap<>(fields.size());
+        for (String field : fields) {
+          pathFields.put("$." + field, field);
         }
+        return connections.submit(alternate, commands -> jsonGetRaw(commands, key, pathFields.keySet()), reply -> {
+          readPaths(reply, pathFields, result);
+          return result.isEmpty() ? Status.ERROR : Status.OK;
+        });
       }
+    } catch (Exception e) {
+      logger.error("Error during JSON read: {}", e.getMessage(), e);
     }
-
-    return result.isEmpty() ? Status.ERROR : Status.OK;
+    return CompletableFuture.completedFuture(Status.ERROR);
   }
 
   @Override
   public Status insert(String table, String key, Map<String, ByteIterator> values) {
     String result;
     Map<String, Object> map = new HashMap<>(StringByteIterator.getStringMap(values));
-    map.put("id", hashKey(key));
+    map.put("id", keyNumber(key));
+
+    if (loader.isEnabled()) {
+      try {
+        return loader.add(key, map) ? Status.OK : Status.BATCHED_OK;
+      } catch (Exception e) {
+        logger.error("Error during JSON bulk load: {}", e.getMessage(), e);
+        return Status.ERROR;
+      }
+    }
 
-    try (StatefulRedisModulesConnection<String, String> connection = pool.borrowObject()) {
-      result = connection.sync().jsonSet(key, JsonPath.of("$"), connection.sync().getJsonParser().fromObject(map));
+    try {
+      result = connections.sync(commands -> commands.jsonSet(key, JsonPath.of("$"), commands.getJsonParser().fromObject(map)));
     } catch (Exception e) {
       logger.error("Error during JSON insert: {}", e.getMessage(), e);
       return Status.ERROR;
@@ -116,12 +290,16 @@ public class JsonRecordStore implements RecordStore {
 
   @Override
   public Status update(String table, String key, Map<String, ByteIterator> values) {
+    if (pathUpdates) {
+      return updatePaths(key, values);
+    }
+
     String result;
     Map<String, Object> map = new HashMap<>(StringByteIterator.getStringMap(values));
-    map.put("id", hashKey(key));
+    map.put("id", keyNumber(key));
 
-    try (StatefulRedisModulesConnection<String, String> connection = pool.borrowObject()) {
-      result = connection.sync().jsonSet(key, JsonPath.of("$"), connection.sync().getJsonParser().fromObject(map));
+    try {
+      result = connections.sync(commands -> commands.jsonSet(key, JsonPath.of("$"), commands.getJsonParser().fromObject(map)));
     } catch (Exception e) {
       logger.error("Error during JSON update: {}", e.getMessage(), e);
       return Status.ERROR;
@@ -130,12 +308,33 @@ public class JsonRecordStore implements RecordStore {
     return result.equals("OK") ? Status.OK : Status.ERROR;
   }
 
+  /*
+    Writes only the updated fields with one JSON.MSET, so the rest of the
+    document is neither sent nor rewritten.
+   */
+  private Status updatePaths(String key, Map<String, ByteIterator> values) {
+    String result;
+    CommandArgs<String, String> args = new CommandArgs<>(StringCodec.UTF8);
+    for (Map.Entry<String, ByteIterator> entry : values.entrySet()) {
+      args.addKey(key).add("$." + entry.getKey()).add(jsonString(entry.getValue().toString()));
+    }
+
+    try {
+      result = connections.sync(commands -> commands.dispatch(CommandType.JSON_MSET, new StatusOutput<>(StringCodec.UTF8), args));
+    } catch (Exception e) {
+      logger.error("Error during JSON update: {}", e.getMessage(), e);
+      return Status.ERROR;
+    }
+
+    return "OK".equals(result) ? Status.OK : Status.ERROR;
+  }
+
   @Override
   public Status delete(String table, String key) {
     Long result;
 
-    try (StatefulRedisModulesConnection<String, String> connection = pool.borrowObject()) {
-      result = connection.sync().del(key);
+    try {
+      result = connections.sync(commands -> commands.del(key));
     } catch (Exception e) {
       logger.error("Error during JSON delete: {}", e.getMessage(), e);
       return Status.ERROR;
@@ -147,40 +346,57 @@ public class JsonRecordStore implements RecordStore {
   @Override
   public Status scan(String table, String key, int count, Set<String> fields,
                      Vector<HashMap<String, ByteIterator>> result) {
-    try (StatefulRedisModulesConnection<String, String> connection = pool.borrowObject()) {
-      String query = String.format("@id:[%d +inf] LIMIT 0 %d", key.hashCode(), count);
+    try {
+      String query = String.format("@id:[%d +inf]", keyNumber(key));
 
-      CompletableFuture<SearchReply<String, String>> searchFuture =
-          connection.async().ftSearch(indexName, query).toCompletableFuture();
-
-      SearchReply<String, String> searchResult = searchFuture.join();
+      if (scanMode.equals("AGGREGATE")) {
+        aggregateScan(query, count, fields, result);
+        return Status.OK;
+      }
 
-      List<CompletableFuture<HashMap<String, ByteIterator>>> futures = new ArrayList<>();
+      boolean inlineScan = scanMode.equals("INLINE");
+      SearchArgs.Builder<String, String> args = SearchArgs.<String, String>builder().limit(0, count);
+      if (sorted) {
+        args.sortBy(SortByArgs.<String>builder().attribute("id").build());
+      }
+      if (!inlineScan) {
+        args.noContent();
+      }
+      SearchArgs<String, String> searchArgs = args.build();
 
-      for (SearchReply.SearchResult<String, String> r : searchResult.getResults()) {
-        String docId = r.getId();
+      SearchReply<String, String> searchResult = connections.async(commands -> commands.ftSearch(indexName, query, searchArgs).get());
 
-        CompletableFuture<HashMap<String, ByteIterator>> fetchFuture =
-            connection.async().jsonGet(docId, JsonPath.of("$"))
-                .toCompletableFuture()
-                .thenApply(jsonValue -> {
-                  String retrievedJson = jsonValue.get(0).asJsonArray().getFirst().toString();
-                  HashMap<String, ByteIterator> values = new HashMap<>();
-                  try {
-                    values = (HashMap<String, ByteIterator>) mapper.readValue(retrievedJson, typeRef);
-                  } catch (Exception e) {
-                    logger.error("Error during JSON get: {}", e.getMessage(), e);
-                  }
-                  return values;
-                });
+      if (inlineScan) {
+        for (SearchReply.SearchResult<String, String> r : searchResult.getResults()) {
+          String document = r.getFields().get("$");
+          if (document != null) {
+            result.add(toRecord(document, fields));
+          }
+        }
+        return Status.OK;
+      }
 
-        futures.add(fetchFuture);
+      List<String> keys = new ArrayList<>(searchResult.getResults().size());
+      for (SearchReply.SearchResult<String, String> r : searchResult.getResults()) {
+        keys.add(r.getId());
       }
 
-      CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+      if (keys.isEmpty()) {
+        return Status.OK;
+      }
 
-      for (CompletableFuture<HashMap<String, ByteIterator>> f : futures) {
-        result.add(f.join());
+      List<byte[]> documents = connections.pipeline(commands -> {
+        List<RedisFuture<byte[]>> futures = new ArrayList<>(keys.size());
+        for (String k : keys) {
+          futures.add(jsonGetRaw(commands, k));
+        }
+        return futures;
+      });
+      for (byte[] document : documents) {
+        HashMap<String, ByteIterator> values = new HashMap<>();
+        if (readDocument(document, fields, values)) {
+          result.add(values);
+        }
       }
 
       return Status.OK;
@@ -189,4 +405,59 @@ public class JsonRecordStore implements RecordStore {
       return Status.ERROR;
     }
   }
+
+  /*
+    Runs the range as FT.AGGREGATE WITHCURSOR, loading the whole document, and
+    adds each page to the result as it is read.  The cursor is deleted if the
+    scan has enough rows before the server runs out of pages.
+   */
+  private void aggregateScan(String query, int count, Set<String> fields,
+                             Vector<HashMap<String, ByteIterator>> result) throws Exception {
+    AggregateArgs.Builder<String, String> args = AggregateArgs.<String, String>builder().load("$");
+    if (sorted) {
+      args.load("id");
+      args.sortBy(AggregateArgs.SortBy.of("@id", AggregateArgs.SortDirection.ASC));
+    }
+    AggregateArgs<String, String> aggregateArgs = args
+        .limit(0, count)
+        .withCursor(AggregateArgs.WithCursor.of((long) pageSize))
+        .build();
+
+    connections.async(commands -> {
+      AggregationReply<String, String> page = commands.ftAggregate(indexName, query, aggregateArgs).get();
+      int remaining = count;
+      while (true) {
+        for (SearchReply<String, String> reply : page.getReplies()) {
+          for (SearchReply.SearchResult<String, String> r : reply.getResults()) {
+            String document = r.getFields().get("$");
+            if (remaining <= 0 || document == null) {
+              continue;
+            }
+            result.add(toRecord(document, fields));
+            remaining--;
+          }
+        }
+        long cursorId = page.getCursorId();
+        if (cursorId == 0) {
+          break;
+        }
+        if (remaining <= 0) {
+          commands.ftCursordel(indexName, cursorId).get();
+          break;
+        }
+        page = commands.ftCursorread(indexName, cursorId).get();
+      }
+      return null;
+    });
+  }
+
+  private HashMap<String, ByteIterator> toRecord(String document, Set<String> fields) throws IOException {
+    HashMap<String, ByteIterator> values = new HashMap<>();
+    try (JsonParser parser = jsonFactory.createParser(document)) {
+      if (parser.nextToken() == JsonToken.START_OBJECT) {
+        ByteIteratorDeserializer.readObject(parser, fields, values);
+      }
+    }
+    return values;
+  }
 }
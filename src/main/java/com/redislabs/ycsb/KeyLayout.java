@@ -0,0 +1,48 @@
+package com.redislabs.ycsb;
+
+/*
+  Rewrites YCSB keys so that neighbouring keys share a hash tag.
+
+  In BUCKET layout a key such as user12345 becomes user{12}12345 with a
+  bucket size of 1000, so a run of consecutive key numbers lands in the same
+  slot and on the same shard.  The shard_key_regex rules installed for
+  sharded databases honour the tag.  NONE leaves keys untouched.
+ */
+public class KeyLayout {
+
+  private final boolean bucketed;
+  private final long bucketSize;
+
+  public KeyLayout(RedisConfig redisConfig) {
+    String layout = redisConfig.getKeyLayout().toUpperCase();
+    if (!layout.equals("NONE") && !layout.equals("BUCKET")) {
+      throw new IllegalArgumentException("Unknown key layout: " + layout);
+    }
+    this.bucketed = layout.equals("BUCKET") && !redisConfig.isTimeSeriesWorkload();
+    this.bucketSize = Math.max(1, redisConfig.getKeyBucketSize());
+  }
+
+  public String apply(String key) {
+    if (!bucketed) {
+      return key;
+    }
+    int digits = key.length();
+    while (digits > 0 && Character.isDigit(key.charAt(digits - 1))) {
+      digits--;
+    }
+    if (digits == key.length()) {
+      return key;
+    }
+    String number = key.substring(digits);
+    long bucket = Long.divideUnsigned(Long.parseUnsignedLong(number), bucketSize);
+    return key.substring(0, digits) + "{" + Long.toUnsignedString(bucket) + "}" + number;
+  }
+
+  /*
+    The numeric part of a key with or without a bucket tag.
+   */
+  public static String keyNumber(String key) {
+    int tag = key.indexOf('}');
+    return tag >= 0 ? key.substring(tag + 1) : key.substring(4);
+  }
+}
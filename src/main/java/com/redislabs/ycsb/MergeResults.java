@@ -0,0 +1,206 @@
+package com.redislabs.ycsb;
+
+import org.HdrHistogram.EncodableHistogram;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogReader;
+import org.HdrHistogram.HistogramLogWriter;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+  Merges the results of several load generators into one report.
+
+  Each argument is a results file or a directory of them.  HdrHistogram logs
+  (written with measurementtype=hdrhistogram and hdrhistogram.fileoutput=true)
+  are grouped by file name, one per operation, and added together so the
+  percentiles are computed over every generator's samples.  Plain YCSB
+  output files contribute their overall throughput, which is summed.  With
+  -o the merged histograms are written to that directory.
+
+  YCSB includes DB.init() in the run time, so a generator that waited at the
+  run barrier reports a lower throughput than it achieved.  The throughput
+  is also reported with each generator's barrier wait taken out of its run
+  time.  The wait is read from the [OVERALL] BarrierWait line, or failing
+  that from the BARRIER-WAIT maximum latency.  The correction assumes each
+  generator waited at the barrier once, before any operation ran, which is
+  how the binding uses it; a generator that timed out at the barrier
+  withdrew and failed, and its results should not be merged.
+ */
+public final class MergeResults {
+
+  public static final Logger logger = LoggerFactory.getLogger(MergeResults.class);
+
+  private static final String HDR_SUFFIX = ".hdr";
+  private static final String THROUGHPUT_PREFIX = "[OVERALL], Throughput(ops/sec), ";
+  private static final String RUNTIME_PREFIX = "[OVERALL], RunTime(ms), ";
+  private static final String BARRIER_PREFIX = "[" + RunBarrier.MEASUREMENT + "], MaxLatency(us), ";
+  private static final String BARRIER_OVERALL_PREFIX = RunBarrier.OVERALL_PREFIX;
+
+  static final class Summary {
+    double throughput;
+    double runTimeMillis;
+    double barrierMicros;
+
+    double activeThroughput() {
+      double active = runTimeMillis - barrierMicros / 1000.0;
+      return active > 0 ? throughput * runTimeMillis / active : throughput;
+    }
+  }
+
+  public static void main(String[] args) {
+    List<File> inputs = new ArrayList<>();
+    File outputDir = null;
+
+    for (int i = 0; i < args.length; i++) {
+      if (args[i].equals("-o") && i + 1 < args.length) {
+        outputDir = new File(args[++i]);
+      } else {
+        inputs.add(new File(args[i]));
+      }
+    }
+
+    if (inputs.isEmpty()) {
+      System.err.println("Usage: merge-results [-o output_dir] results_file_or_dir ...");
+      System.exit(1);
+    }
+
+    try {
+      mergeResults(inputs, outputDir);
+    } catch (Exception e) {
+      logger.error(e.getMessage(), e);
+      System.exit(1);
+    }
+  }
+
+  public static void mergeResults(List<File> inputs, File outputDir) throws IOException {
+    Map<String, Histogram> histograms = new TreeMap<>();
+    double throughput = 0;
+    double activeThroughput = 0;
+    int generators = 0;
+
+    for (File file : expand(inputs)) {
+      if (file.getName().endsWith(HDR_SUFFIX)) {
+        String operation = file.getName().substring(0, file.getName().length() - HDR_SUFFIX.length());
+        Histogram merged = histograms.computeIfAbsent(operation, k -> new Histogram(3));
+        readHistogram(file, merged);
+      } else {
+        Summary summary = readSummary(file);
+        if (summary != null) {
+          throughput += summary.throughput;
+          activeThroughput += summary.activeThroughput();
+          generators++;
+        }
+      }
+    }
+
+    if (generators > 0) {
+      System.out.printf("[OVERALL], Generators, %d%n", generators);
+      System.out.printf("[OVERALL], Throughput(ops/sec), %.2f%n", throughput);
+      System.out.printf("[OVERALL], ThroughputExcludingBarrier(ops/sec), %.2f%n", activeThroughput);
+    }
+    for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+      printHistogram(entry.getKey(), entry.getValue());
+    }
+
+    if (outputDir != null) {
+      if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+        throw new IOException("Can not create output directory " + outputDir);
+      }
+      for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+        writeHistogram(new File(outputDir, entry.getKey() + HDR_SUFFIX), entry.getValue());
+      }
+      logger.info("Merged histograms written to {}", outputDir);
+    }
+  }
+
+  private static List<File> expand(List<File> inputs) throws IOException {
+    List<File> files = new ArrayList<>();
+    for (File input : inputs) {
+      if (input.isDirectory()) {
+        File[] children = input.listFiles(File::isFile);
+        if (children != null) {
+          for (File child : children) {
+            files.add(child);
+          }
+        }
+      } else if (input.isFile()) {
+        files.add(input);
+      } else {
+        throw new IOException("No such file or directory: " + input);
+      }
+    }
+    return files;
+  }
+
+  private static void readHistogram(File file, Histogram merged) throws IOException {
+    HistogramLogReader reader = new HistogramLogReader(file);
+    try {
+      EncodableHistogram interval;
+      while ((interval = reader.nextIntervalHistogram()) != null) {
+        if (interval instanceof Histogram) {
+          merged.add((Histogram) interval);
+        }
+      }
+    } finally {
+      reader.close();
+    }
+  }
+
+  static Summary readSummary(File file) throws IOException {
+    Summary summary = new Summary();
+    boolean found = false;
+    boolean overallBarrier = false;
+    try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.startsWith(THROUGHPUT_PREFIX)) {
+          summary.throughput = Double.parseDouble(line.substring(THROUGHPUT_PREFIX.length()).trim());
+          found = true;
+        } else if (line.startsWith(RUNTIME_PREFIX)) {
+          summary.runTimeMillis = Double.parseDouble(line.substring(RUNTIME_PREFIX.length()).trim());
+        } else if (line.startsWith(BARRIER_OVERALL_PREFIX)) {
+          summary.barrierMicros = Double.parseDouble(line.substring(BARRIER_OVERALL_PREFIX.length()).trim());
+          overallBarrier = true;
+        } else if (line.startsWith(BARRIER_PREFIX) && !overallBarrier) {
+          summary.barrierMicros = Double.parseDouble(line.substring(BARRIER_PREFIX.length()).trim());
+        }
+      }
+    }
+    return found ? summary : null;
+  }
+
+  private static void printHistogram(String operation, Histogram histogram) {
+    System.out.printf("[%s], Operations, %d%n", operation, histogram.getTotalCount());
+    System.out.printf("[%s], AverageLatency(us), %.2f%n", operation, histogram.getMean());
+    System.out.printf("[%s], MinLatency(us), %d%n", operation, histogram.getMinValue());
+    System.out.printf("[%s], MaxLatency(us), %d%n", operation, histogram.getMaxValue());
+    System.out.printf("[%s], 50thPercentileLatency(us), %d%n", operation, histogram.getValueAtPercentile(50));
+    System.out.printf("[%s], 95thPercentileLatency(us), %d%n", operation, histogram.getValueAtPercentile(95));
+    System.out.printf("[%s], 99thPercentileLatency(us), %d%n", operation, histogram.getValueAtPercentile(99));
+    System.out.printf("[%s], 99.9PercentileLatency(us), %d%n", operation, histogram.getValueAtPercentile(99.9));
+  }
+
+  private static void writeHistogram(File file, Histogram histogram) throws IOException {
+    try (PrintStream out = new PrintStream(file)) {
+      HistogramLogWriter writer = new HistogramLogWriter(out);
+      writer.outputLogFormatVersion();
+      writer.outputLegend();
+      writer.outputIntervalHistogram(histogram);
+    }
+  }
+
+  public MergeResults() {
+    super();
+  }
+}
@@ -0,0 +1,73 @@
+package com.redislabs.ycsb;
+
+import io.lettuce.core.api.StatefulConnection;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import io.lettuce.core.cluster.api.sync.RedisClusterCommands;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/*
+  Shares a fixed set of thread-safe connections between all client threads.
+
+  Each thread is pinned to one connection by its thread id, so there is no
+  borrow, no validation and no lock on the operation path.  An alternate
+  request goes to the next connection, so it does not queue behind the
+  request it is racing; with a single connection both share it.
+ */
+public class MultiplexedConnectionManager<K, V, C extends StatefulConnection<K, V>> extends ConnectionManager<K, V, C> {
+
+  private final List<C> connections;
+
+  public MultiplexedConnectionManager(Supplier<C> connectionSupplier, int connectionCount,
+                                      Function<C, RedisClusterCommands<K, V>> syncCommands,
+                                      Function<C, RedisClusterAsyncCommands<K, V>> asyncCommands) {
+    super(syncCommands, asyncCommands);
+    int count = Math.max(1, connectionCount);
+    this.connections = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      connections.add(connectionSupplier.get());
+    }
+  }
+
+  @Override
+  protected C acquire() {
+    return connections.get((int) (Thread.currentThread().getId() % connections.size()));
+  }
+
+  @Override
+  protected C acquireAlternate() {
+    return connections.get((int) ((Thread.currentThread().getId() + 1) % connections.size()));
+  }
+
+  @Override
+  protected void release(C connection) {
+  }
+
+  @Override
+  protected boolean isExclusive() {
+    return false;
+  }
+
+  public void setAutoFlushCommands(boolean autoFlush) {
+    for (C connection : connections) {
+      connection.setAutoFlushCommands(autoFlush);
+    }
+  }
+
+  public void flushCommands() {
+    for (C connection : connections) {
+      connection.flushCommands();
+    }
+  }
+
+  @Override
+  public void close() {
+    for (C connection : connections) {
+      connection.close();
+    }
+    connections.clear();
+  }
+}
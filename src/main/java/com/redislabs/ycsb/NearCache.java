@@ -0,0 +1,142 @@
+package com.redislabs.ycsb;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+  Bounded client side record cache kept coherent by server invalidations.
+
+  Entries are spread over LRU segments, each guarded by its own lock.  A miss
+  registers a pending marker before the record is fetched, and the fetched
+  record is only installed if no invalidation for the key arrived in the
+  meantime, so a value read before a concurrent write can never be cached
+  after the write's invalidation has been processed.
+
+  A lookup that finds the record counts as a hit and a reservation counts as
+  a miss, so reads the caller serves around the cache are counted on their
+  own as bypasses.  Invalidations only count those pushed by the server, not
+  evictions after local writes or a clear after the tracking connection
+  dropped.
+ */
+public class NearCache {
+
+  private static final int SEGMENTS = 16;
+
+  private final Segment[] segments = new Segment[SEGMENTS];
+  private final Map<String, Object> pending = new ConcurrentHashMap<>();
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder bypasses = new LongAdder();
+  private final LongAdder invalidations = new LongAdder();
+
+  private static class Segment extends LinkedHashMap<String, Map<String, byte[]>> {
+    private final int capacity;
+
+    Segment(int capacity) {
+      super(16, 0.75f, true);
+      this.capacity = capacity;
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, Map<String, byte[]>> eldest) {
+      return size() > capacity;
+    }
+  }
+
+  public NearCache(int size) {
+    int capacity = Math.max(1, size / SEGMENTS);
+    for (int i = 0; i < SEGMENTS; i++) {
+      segments[i] = new Segment(capacity);
+    }
+  }
+
+  private Segment segment(String key) {
+    return segments[Math.floorMod(key.hashCode(), SEGMENTS)];
+  }
+
+  public Map<String, byte[]> get(String key) {
+    Segment segment = segment(key);
+    Map<String, byte[]> record;
+    synchronized (segment) {
+      record = segment.get(key);
+    }
+    if (record != null) {
+      hits.increment();
+    }
+    return record;
+  }
+
+  public Object reserve(String key) {
+    misses.increment();
+    Object token = new Object();
+    pending.put(key, token);
+    return token;
+  }
+
+  public void install(String key, Object token, Map<String, byte[]> record) {
+    Segment segment = segment(key);
+    synchronized (segment) {
+      if (pending.remove(key, token)) {
+        segment.put(key, record);
+      }
+    }
+  }
+
+  public void release(String key, Object token) {
+    pending.remove(key, token);
+  }
+
+  public void invalidate(String key) {
+    invalidations.increment();
+    evict(key);
+  }
+
+  public void evict(String key) {
+    Segment segment = segment(key);
+    synchronized (segment) {
+      pending.remove(key);
+      segment.remove(key);
+    }
+  }
+
+  public void bypass() {
+    bypasses.increment();
+  }
+
+  public void invalidateAll() {
+    invalidations.increment();
+    clear();
+  }
+
+  public void clear() {
+    pending.clear();
+    for (Segment segment : segments) {
+      synchronized (segment) {
+        segment.clear();
+      }
+    }
+  }
+
+  public long getHits() {
+    return hits.sum();
+  }
+
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  public long getBypasses() {
+    return bypasses.sum();
+  }
+
+  public long getInvalidations() {
+    return invalidations.sum();
+  }
+
+  public double getHitRatio() {
+    long total = getHits() + getMisses();
+    return total == 0 ? 0.0 : (double) getHits() / total;
+  }
+}
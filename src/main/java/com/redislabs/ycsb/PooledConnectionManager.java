@@ -0,0 +1,131 @@
+package com.redislabs.ycsb;
+
+import com.codelry.util.ycsb.measurements.Measurements;
+
+import io.lettuce.core.api.StatefulConnection;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import io.lettuce.core.cluster.api.sync.RedisClusterCommands;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.apache.commons.pool2.BasePooledObjectFactory;
+import org.apache.commons.pool2.PooledObject;
+import org.apache.commons.pool2.impl.DefaultPooledObject;
+import org.apache.commons.pool2.impl.GenericObjectPool;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+  Borrows a connection from a commons-pool2 pool for every operation.
+
+  The pool is built on its own connection factory so that its work can be
+  measured.  When metrics are enabled, each borrow is recorded under
+  POOL-BORROW, each connection opened under POOL-CREATE, each one closed
+  under POOL-DESTROY and each validation under POOL-OPEN-CHECK, so the counts
+  and times appear in the YCSB results.  Validation is the check Lettuce
+  itself uses, whether the connection is still open; no command is sent.
+  Borrow and return validation are off by default and idle connections are
+  checked by the evictor.  The pool counters are also logged on close.
+ */
+public class PooledConnectionManager<K, V, C extends StatefulConnection<K, V>> extends ConnectionManager<K, V, C> {
+  private static final Logger logger = LoggerFactory.getLogger(PooledConnectionManager.class);
+
+  private final GenericObjectPool<C> pool;
+  private final ConnectionFactory<C> factory;
+  private final Measurements measurements;
+
+  private static final class ConnectionFactory<C extends StatefulConnection<?, ?>> extends BasePooledObjectFactory<C> {
+    private final Supplier<C> connectionSupplier;
+    private final Measurements measurements;
+    private final AtomicLong openChecks = new AtomicLong(0);
+
+    private ConnectionFactory(Supplier<C> connectionSupplier, Measurements measurements) {
+      this.connectionSupplier = connectionSupplier;
+      this.measurements = measurements;
+    }
+
+    private void measure(String operation, long start) {
+      if (measurements != null) {
+        measurements.measure(operation, (int) TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+      }
+    }
+
+    @Override
+    public C create() {
+      long start = System.nanoTime();
+      C connection = connectionSupplier.get();
+      measure("POOL-CREATE", start);
+      return connection;
+    }
+
+    @Override
+    public PooledObject<C> wrap(C connection) {
+      return new DefaultPooledObject<>(connection);
+    }
+
+    @Override
+    public boolean validateObject(PooledObject<C> pooled) {
+      long start = System.nanoTime();
+      boolean open = pooled.getObject().isOpen();
+      openChecks.incrementAndGet();
+      measure("POOL-OPEN-CHECK", start);
+      return open;
+    }
+
+    @Override
+    public void destroyObject(PooledObject<C> pooled) {
+      long start = System.nanoTime();
+      pooled.getObject().close();
+      measure("POOL-DESTROY", start);
+    }
+  }
+
+  public PooledConnectionManager(Supplier<C> connectionSupplier, GenericObjectPoolConfig<C> poolConfig, boolean metrics,
+                                 Function<C, RedisClusterCommands<K, V>> syncCommands,
+                                 Function<C, RedisClusterAsyncCommands<K, V>> asyncCommands) {
+    super(syncCommands, asyncCommands);
+    this.measurements = metrics ? Measurements.getMeasurements() : null;
+    this.factory = new ConnectionFactory<>(connectionSupplier, measurements);
+    this.pool = new GenericObjectPool<>(factory, poolConfig);
+  }
+
+  GenericObjectPool<C> getPool() {
+    return pool;
+  }
+
+  @Override
+  protected C acquire() throws Exception {
+    if (measurements == null) {
+      return pool.borrowObject();
+    }
+    long start = System.nanoTime();
+    C connection = pool.borrowObject();
+    measurements.measure("POOL-BORROW", (int) TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+    return connection;
+  }
+
+  @Override
+  protected void release(C connection) {
+    pool.returnObject(connection);
+  }
+
+  @Override
+  protected boolean isExclusive() {
+    return true;
+  }
+
+  @Override
+  public void close() {
+    if (measurements != null) {
+      logger.info("Connection pool: borrowed: {}, created: {}, destroyed: {}, destroyed by validation: {}, open checks: {}, mean borrow wait: {} ms, max borrow wait: {} ms",
+          pool.getBorrowedCount(), pool.getCreatedCount(), pool.getDestroyedCount(),
+          pool.getDestroyedByBorrowValidationCount(), factory.openChecks.get(),
+          pool.getMeanBorrowWaitTimeMillis(), pool.getMaxBorrowWaitTimeMillis());
+    }
+    pool.close();
+  }
+}
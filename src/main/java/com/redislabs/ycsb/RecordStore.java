@@ -1,16 +1,27 @@
 package com.redislabs.ycsb;
 
 import com.codelry.util.ycsb.ByteIterator;
+import com.codelry.util.ycsb.DBException;
 import com.codelry.util.ycsb.Status;
 
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.CompletableFuture;
 
 public interface RecordStore {
-    void disconnect();
+    void disconnect() throws DBException;
     Status read(String table, String key, Set<String> fields, Map<String, ByteIterator> result);
+
+    /*
+      Issues a read without waiting for it; the future completes once the
+      result map is filled.  With alternate set the read avoids the connection
+      this thread would normally use.  Cancelling the future cancels the read.
+     */
+    CompletableFuture<Status> readAsync(String table, String key, Set<String> fields,
+                                        Map<String, ByteIterator> result, boolean alternate);
+
     Status insert(String table, String key, Map<String, ByteIterator> values);
     Status update(String table, String key, Map<String, ByteIterator> values);
     Status delete(String table, String key);
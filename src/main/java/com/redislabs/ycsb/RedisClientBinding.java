@@ -27,7 +27,16 @@ public class RedisClientBinding extends DB {
   private static final String PROPERTY_FILE = "db.properties";
   public static final String THREAD_COUNT_PROPERTY = "threadcount";
 
+  private static final Object INIT_COORDINATOR = new Object();
+  private static int bindings = 0;
+  private static DatasetMetadata dataset;
+  private static boolean datasetLoaded = false;
+  private static volatile boolean datasetModified = false;
+  private static volatile boolean loadFailed = false;
+
   private RecordStore recordStore;
+  private KeyLayout keyLayout;
+  private RedisConfig redisConfig;
 
   public void init() throws DBException {
     ClassLoader classloader = Thread.currentThread().getContextClassLoader();
@@ -49,55 +58,187 @@ public class RedisClientBinding extends DB {
 
     properties.putAll(getProperties());
 
-    RedisConfig redisConfig = new RedisConfig(properties);
+    redisConfig = new RedisConfig(properties);
     boolean enterpriseDb = redisConfig.isEnterpriseDb();
     String searchStrategy = redisConfig.getSearchStrategy();
     int threadCount = Integer.parseInt(properties.getProperty(THREAD_COUNT_PROPERTY, "32"));
+    // a hedged read can hold a second connection while the first is still in use
+    int poolSize = redisConfig.isHedgeEnabled() ? threadCount * 2 : threadCount;
 
     try {
-      if (enterpriseDb) {
+      keyLayout = new KeyLayout(redisConfig);
+      if (redisConfig.getRedisURIs().size() > 1
+          && (redisConfig.isTimeSeriesWorkload() || enterpriseDb || redisConfig.isAsyncEnabled())) {
+        throw new IllegalArgumentException("Multiple hosts are only supported by the Hash record store");
+      }
+      if (redisConfig.isTimeSeriesWorkload()) {
+        recordStore = new TimeSeriesRecordStore(redisConfig, poolSize);
+      } else if (enterpriseDb) {
         if (searchStrategy.equals("JSON")) {
-          recordStore = new JsonRecordStore(redisConfig, threadCount);
+          recordStore = new JsonRecordStore(redisConfig, poolSize);
         } else {
-          recordStore = new HashSearchRecordStore(redisConfig, threadCount);
+          recordStore = new HashSearchRecordStore(redisConfig, poolSize);
         }
+      } else if (redisConfig.isAsyncEnabled()) {
+        recordStore = new AsyncHashRecordStore(redisConfig, poolSize);
       } else {
-        recordStore = new HashRecordStore(redisConfig, threadCount);
+        recordStore = new HashRecordStore(redisConfig, poolSize);
+      }
+      if (redisConfig.isHedgeEnabled()) {
+        recordStore = new HedgingRecordStore(recordStore, redisConfig);
+      }
+      if (redisConfig.isCacheEnabled()) {
+        recordStore = new CachingRecordStore(recordStore, redisConfig);
       }
     } catch (Exception e) {
       logger.error("Error connecting to Redis: {}", e.getMessage());
       throw new DBException(e);
     }
+
+    synchronized (INIT_COORDINATOR) {
+      if (bindings++ == 0) {
+        if (redisConfig.isBulkLoad() && (redisConfig.isTimeSeriesWorkload() || redisConfig.isAsyncEnabled())) {
+          // these stores already batch their writes
+          logger.warn("Ignoring {}: the {} record store does not use bulk load", RedisConfig.REDIS_LOAD_BATCH,
+              redisConfig.isTimeSeriesWorkload() ? "TimeSeries" : "async");
+        }
+        if (isReusableLoad()) {
+          dataset = new DatasetMetadata(redisConfig);
+          try {
+            datasetLoaded = RedisClientBuilder.withCommands(redisConfig, dataset::isLoaded);
+          } catch (Exception e) {
+            logger.warn("Could not read dataset metadata: {}", e.getMessage());
+          }
+          if (datasetLoaded) {
+            logger.info("Dataset {} already loaded, skipping inserts", dataset.getFingerprint());
+          }
+        } else if (redisConfig.isDoTransactions()) {
+          checkDataset();
+        }
+        // the remaining client threads wait on the coordinator until the barrier opens
+        RunBarrier barrier = new RunBarrier(redisConfig);
+        if (barrier.isEnabled()) {
+          try {
+            RedisClientBuilder.withCommands(redisConfig, commands -> {
+              barrier.await(commands);
+              return null;
+            });
+          } catch (Exception e) {
+            logger.error("Error waiting at run barrier: {}", e.getMessage(), e);
+            throw new DBException(e);
+          }
+        }
+      }
+    }
+  }
+
+  /*
+    Refuses to run against a dataset loaded with different settings, such as
+    another compression setting, which would misread every stored value.
+   */
+  private void checkDataset() throws DBException {
+    dataset = new DatasetMetadata(redisConfig);
+    String loaded = null;
+    try {
+      loaded = RedisClientBuilder.withCommands(redisConfig, dataset::getMismatch);
+    } catch (Exception e) {
+      logger.warn("Could not read dataset metadata: {}", e.getMessage());
+    }
+    if (loaded != null) {
+      throw new DBException("Dataset was loaded with " + loaded + " but this run uses " + dataset.getDescription());
+    }
+  }
+
+  /*
+    Run phase inserts and deletes change the dataset, so it is marked before
+    the first of them; a run that stops part way is then not reused either.
+   */
+  private void markModified() {
+    if (datasetModified || !redisConfig.isDatasetReuse() || !redisConfig.isDoTransactions()) {
+      return;
+    }
+    synchronized (INIT_COORDINATOR) {
+      if (!datasetModified) {
+        try {
+          RedisClientBuilder.withCommands(redisConfig, commands -> {
+            dataset.markModified(commands);
+            return null;
+          });
+          logger.info("Dataset {} modified by this run, it will be reloaded on the next prep", dataset.getFingerprint());
+        } catch (Exception e) {
+          logger.error("Error marking dataset as modified: {}", e.getMessage(), e);
+        }
+        datasetModified = true;
+      }
+    }
+  }
+
+  private boolean isReusableLoad() {
+    return redisConfig.isDatasetReuse() && !redisConfig.isDoTransactions();
   }
 
   @Override
-  public void cleanup() {
-    recordStore.disconnect();
+  public void cleanup() throws DBException {
+    DBException failure = null;
+    try {
+      recordStore.disconnect();
+    } catch (DBException e) {
+      logger.error("Error closing record store: {}", e.getMessage(), e);
+      loadFailed = true;
+      failure = e;
+    }
+    synchronized (INIT_COORDINATOR) {
+      if (--bindings == 0 && isReusableLoad() && !datasetLoaded && !loadFailed) {
+        try {
+          RedisClientBuilder.withCommands(redisConfig, commands -> {
+            dataset.recordLoaded(commands);
+            return null;
+          });
+          logger.info("Dataset {} records {} to {} marked as loaded", dataset.getFingerprint(),
+              dataset.getInsertStart(), dataset.getInsertStart() + dataset.getInsertCount() - 1);
+        } catch (Exception e) {
+          logger.error("Error recording dataset metadata: {}", e.getMessage(), e);
+        }
+      }
+    }
+
+    if (failure != null) {
+      throw failure;
+    }
   }
 
   @Override
   public Status read(String table, String key, Set<String> fields, Map<String, ByteIterator> result) {
-    return recordStore.read(table, key, fields, result);
+    return recordStore.read(table, keyLayout.apply(key), fields, result);
   }
 
   @Override
   public Status insert(String table, String key, Map<String, ByteIterator> values) {
-    return recordStore.insert(table, key, values);
+    if (datasetLoaded) {
+      return Status.OK;
+    }
+    markModified();
+    Status status = recordStore.insert(table, keyLayout.apply(key), values);
+    if (status == Status.ERROR) {
+      loadFailed = true;
+    }
+    return status;
   }
 
   @Override
   public Status delete(String table, String key) {
-    return recordStore.delete(table, key);
+    markModified();
+    return recordStore.delete(table, keyLayout.apply(key));
   }
 
   @Override
   public Status update(String table, String key, Map<String, ByteIterator> values) {
-    return recordStore.update(table, key, values);
+    return recordStore.update(table, keyLayout.apply(key), values);
   }
 
   @Override
   public Status scan(String table, String startkey, int recordcount,
                      Set<String> fields, Vector<HashMap<String, ByteIterator>> result) {
-    return recordStore.scan(table, startkey, recordcount, fields, result);
+    return recordStore.scan(table, keyLayout.apply(startkey), recordcount, fields, result);
   }
 }
@@ -2,20 +2,54 @@ package com.redislabs.ycsb;
 
 import com.redis.lettucemod.RedisModulesClient;
 import com.redis.lettucemod.api.StatefulRedisModulesConnection;
+import com.redis.lettucemod.cluster.RedisModulesClusterClient;
+import io.lettuce.core.AbstractRedisClient;
 import io.lettuce.core.ClientOptions;
+import io.lettuce.core.ReadFrom;
+import io.lettuce.core.masterreplica.MasterReplica;
+import io.lettuce.core.masterreplica.StatefulRedisMasterReplicaConnection;
+import io.lettuce.core.protocol.ProtocolVersion;
+import io.lettuce.core.resource.ClientResources;
+import io.lettuce.core.resource.DefaultClientResources;
+import io.lettuce.core.resource.EpollProvider;
+import io.lettuce.core.resource.IOUringProvider;
 import io.lettuce.core.RedisClient;
 import io.lettuce.core.RedisURI;
+import io.lettuce.core.api.StatefulConnection;
 import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.cluster.ClusterClientOptions;
+import io.lettuce.core.cluster.ClusterTopologyRefreshOptions;
+import io.lettuce.core.cluster.RedisClusterClient;
+import io.lettuce.core.cluster.api.StatefulRedisClusterConnection;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import io.lettuce.core.cluster.api.sync.RedisClusterCommands;
+import io.lettuce.core.codec.ByteArrayCodec;
+import io.lettuce.core.codec.RedisCodec;
+import io.lettuce.core.codec.StringCodec;
 import io.lettuce.core.support.ConnectionPoolSupport;
 import org.apache.commons.pool2.impl.GenericObjectPool;
 import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 public class RedisClientBuilder {
+  private static final Logger logger = LoggerFactory.getLogger(RedisClientBuilder.class);
+
+  public static final RedisCodec<String, byte[]> BINARY_CODEC = RedisCodec.of(StringCodec.UTF8, ByteArrayCodec.INSTANCE);
+
+  private static ClientResources clientResources;
 
   private final RedisConfig redisConfig;
+  private final RedisURI redisURI;
   private final ClientOptions clientOptions;
+  private final ClusterClientOptions clusterClientOptions;
   private final int maxIdle;
   private final int minIdle;
+  private final ReadFrom readFrom;
 
   public RedisConfig getRedisConfig() {
     return redisConfig;
@@ -24,14 +58,24 @@ public class RedisClientBuilder {
   public static class Builder {
 
     private RedisConfig redisConfig;
-    private int maxIdle = 4;
-    private int minIdle = 2;
+    private RedisURI redisURI;
+    private int maxIdle = -1;
+    private int minIdle = -1;
 
     public Builder redisConfig(RedisConfig redisConfig) {
       this.redisConfig = redisConfig;
       return this;
     }
 
+    /*
+      Connects to this endpoint instead of the one in the configuration, for
+      stores that spread keys over several standalone servers.
+     */
+    public Builder redisURI(RedisURI redisURI) {
+      this.redisURI = redisURI;
+      return this;
+    }
+
     public Builder maxIdle(int maxIdle) {
       this.maxIdle = maxIdle;
       return this;
@@ -49,61 +93,273 @@ public class RedisClientBuilder {
 
   RedisClientBuilder(Builder builder) {
     this.redisConfig = builder.redisConfig;
+    this.redisURI = builder.redisURI != null ? builder.redisURI : redisConfig.getRedisURI();
     this.maxIdle = builder.maxIdle;
     this.minIdle = builder.minIdle;
+    this.readFrom = readFrom(redisConfig.getReadFrom());
 
     clientOptions = ClientOptions.builder()
         .autoReconnect(true)
         .build();
+
+    ClusterTopologyRefreshOptions topologyRefreshOptions = ClusterTopologyRefreshOptions.builder()
+        .enablePeriodicRefresh(Duration.ofSeconds(redisConfig.getClusterRefreshPeriod()))
+        .enableAllAdaptiveRefreshTriggers()
+        .build();
+
+    clusterClientOptions = ClusterClientOptions.builder()
+        .autoReconnect(true)
+        .topologyRefreshOptions(topologyRefreshOptions)
+        .build();
+  }
+
+  /*
+    All clients share one set of event loops sized from the configuration.
+    Lettuce would pick a native transport on its own whenever one is on the
+    classpath, so both switches are always set before the resources are
+    created: NIO is the default, and epoll or io_uring are used only when
+    asked for by name.
+   */
+  public static synchronized ClientResources getClientResources(RedisConfig redisConfig) {
+    if (clientResources == null) {
+      String transport = redisConfig.getTransport().toUpperCase();
+      if (!transport.equals("NIO") && !transport.equals("EPOLL") && !transport.equals("IOURING")) {
+        throw new IllegalArgumentException("Unknown transport: " + transport);
+      }
+      System.setProperty("io.lettuce.core.iouring", String.valueOf(transport.equals("IOURING")));
+      System.setProperty("io.lettuce.core.epoll", String.valueOf(transport.equals("EPOLL")));
+      if ((transport.equals("IOURING") && !IOUringProvider.isAvailable())
+          || (transport.equals("EPOLL") && !EpollProvider.isAvailable())) {
+        logger.warn("Transport {} is not available on this platform, using NIO", transport);
+      }
+
+      DefaultClientResources.Builder builder = DefaultClientResources.builder();
+      if (redisConfig.getIoThreads() > 0) {
+        builder.ioThreadPoolSize(redisConfig.getIoThreads());
+      }
+      if (redisConfig.getComputationThreads() > 0) {
+        builder.computationThreadPoolSize(redisConfig.getComputationThreads());
+      }
+      clientResources = builder.build();
+
+      logger.info("Client resources: transport: {}, io threads: {}, computation threads: {}",
+          IOUringProvider.isAvailable() ? "io_uring" : EpollProvider.isAvailable() ? "epoll" : "nio",
+          clientResources.ioThreadPoolSize(), clientResources.computationThreadPoolSize());
+
+      ClientResources resources = clientResources;
+      Runtime.getRuntime().addShutdownHook(new Thread(() -> resources.shutdown()));
+    }
+    return clientResources;
+  }
+
+  /*
+    Maps the read policy name to a Lettuce ReadFrom, accepting either the
+    Lettuce spelling (replicaPreferred) or the property style
+    (REPLICA_PREFERRED).  Reading from the primary needs no special handling
+    and returns null.
+   */
+  private static ReadFrom readFrom(String name) {
+    ReadFrom policy = ReadFrom.valueOf(name.replace("_", "").replace("-", ""));
+    return policy == ReadFrom.UPSTREAM || policy == ReadFrom.MASTER ? null : policy;
+  }
+
+  /*
+    Standalone connections go through the master/replica topology discovered
+    from the configured endpoint when a replica read policy is set.  Lettuce
+    then sends read-only commands according to the policy and everything else
+    to the primary.
+   */
+  private <K, V> StatefulRedisConnection<K, V> connect(RedisClient client, RedisCodec<K, V> codec) {
+    if (readFrom == null) {
+      return client.connect(codec);
+    }
+    StatefulRedisMasterReplicaConnection<K, V> connection = MasterReplica.connect(client, codec, getRedisURI());
+    connection.setReadFrom(readFrom);
+    return connection;
+  }
+
+  private <K, V> StatefulRedisClusterConnection<K, V> connect(RedisClusterClient client, RedisCodec<K, V> codec) {
+    StatefulRedisClusterConnection<K, V> connection = client.connect(codec);
+    if (readFrom != null) {
+      connection.setReadFrom(readFrom);
+    }
+    return connection;
   }
 
   public RedisURI getRedisURI() {
-    return this.redisConfig.getRedisURI();
+    return this.redisURI;
   }
 
   public RedisModulesClient getModulesClient() {
-    RedisModulesClient client = RedisModulesClient.create(getRedisURI());
+    RedisModulesClient client = RedisModulesClient.create(getClientResources(redisConfig), getRedisURI());
     client.setOptions(clientOptions);
     return client;
   }
 
   public RedisClient getClient() {
-    RedisClient client = RedisClient.create(getRedisURI());
+    RedisClient client = RedisClient.create(getClientResources(redisConfig), getRedisURI());
     client.setOptions(clientOptions);
     return client;
   }
 
+  /*
+    Client for the invalidation connection of the near cache, which needs
+    RESP3 push messages.
+   */
+  public RedisClient getTrackingClient() {
+    RedisClient client = RedisClient.create(getClientResources(redisConfig), getRedisURI());
+    client.setOptions(ClientOptions.builder()
+        .autoReconnect(true)
+        .protocolVersion(ProtocolVersion.RESP3)
+        .build());
+    return client;
+  }
+
+  public RedisModulesClusterClient getModulesClusterClient() {
+    RedisModulesClusterClient client = RedisModulesClusterClient.create(getClientResources(redisConfig), getRedisURI());
+    client.setOptions(clusterClientOptions);
+    return client;
+  }
+
+  public RedisClusterClient getClusterClient() {
+    RedisClusterClient client = RedisClusterClient.create(getClientResources(redisConfig), getRedisURI());
+    client.setOptions(clusterClientOptions);
+    return client;
+  }
+
   public GenericObjectPool<StatefulRedisModulesConnection<String, String>> getModulesPool(RedisModulesClient client, int poolMaxSize) {
-    GenericObjectPoolConfig<StatefulRedisModulesConnection<String, String>> poolConfig = new GenericObjectPoolConfig<>();
+    return createPool(client::connect, poolMaxSize);
+  }
 
-    poolConfig.setMaxTotal(poolMaxSize);
-    poolConfig.setMaxIdle(maxIdle);
-    poolConfig.setMinIdle(minIdle);
-    poolConfig.setTestOnBorrow(true);
-    poolConfig.setTestOnReturn(true);
-    poolConfig.setTestWhileIdle(true);
-    poolConfig.setBlockWhenExhausted(true);
+  public GenericObjectPool<StatefulRedisConnection<String, String>> getPool(RedisClient client, int poolMaxSize) {
+    return createPool(client::connect, poolMaxSize);
+  }
 
-    return ConnectionPoolSupport.createGenericObjectPool(
-        client::connect,
-        poolConfig
+  public ConnectionManager<String, String, ?> getConnectionManager(AbstractRedisClient client, int poolMaxSize) {
+    if (client instanceof RedisClusterClient) {
+      return getConnectionManager((RedisClusterClient) client, poolMaxSize);
+    }
+    return getConnectionManager((RedisClient) client, poolMaxSize);
+  }
+
+  public ConnectionManager<String, String, StatefulRedisConnection<String, String>> getConnectionManager(RedisClient client, int poolMaxSize) {
+    return createConnectionManager(() -> connect(client, StringCodec.UTF8), StatefulRedisConnection::sync, StatefulRedisConnection::async, poolMaxSize);
+  }
+
+  public ConnectionManager<String, String, StatefulRedisClusterConnection<String, String>> getConnectionManager(RedisClusterClient client, int poolMaxSize) {
+    return createConnectionManager(() -> connect(client, StringCodec.UTF8), StatefulRedisClusterConnection::sync, StatefulRedisClusterConnection::async, poolMaxSize);
+  }
+
+  /*
+    Connections with String keys and raw byte[] values, so field values are
+    never decoded into Java strings.
+   */
+  public ConnectionManager<String, byte[], ?> getBinaryConnectionManager(AbstractRedisClient client, int poolMaxSize) {
+    if (client instanceof RedisClusterClient) {
+      RedisClusterClient clusterClient = (RedisClusterClient) client;
+      return createConnectionManager(() -> connect(clusterClient, BINARY_CODEC),
+          StatefulRedisClusterConnection::sync, StatefulRedisClusterConnection::async, poolMaxSize);
+    }
+    RedisClient redisClient = (RedisClient) client;
+    return createConnectionManager(() -> connect(redisClient, BINARY_CODEC),
+        StatefulRedisConnection::sync, StatefulRedisConnection::async, poolMaxSize);
+  }
+
+  public MultiplexedConnectionManager<String, String, ?> getDedicatedConnection(AbstractRedisClient client) {
+    if (client instanceof RedisClusterClient) {
+      RedisClusterClient clusterClient = (RedisClusterClient) client;
+      return new MultiplexedConnectionManager<>(() -> connect(clusterClient, StringCodec.UTF8), 1,
+          StatefulRedisClusterConnection::sync, StatefulRedisClusterConnection::async);
+    }
+    RedisClient redisClient = (RedisClient) client;
+    return new MultiplexedConnectionManager<>(() -> connect(redisClient, StringCodec.UTF8), 1,
+        StatefulRedisConnection::sync, StatefulRedisConnection::async);
+  }
+
+  private <K, V, C extends StatefulConnection<K, V>> ConnectionManager<K, V, C> createConnectionManager(
+      Supplier<C> connectionSupplier,
+      Function<C, RedisClusterCommands<K, V>> syncCommands,
+      Function<C, RedisClusterAsyncCommands<K, V>> asyncCommands,
+      int poolMaxSize) {
+    if (redisConfig.isMultiplexed()) {
+      logger.debug("Using {} multiplexed connections", redisConfig.getConnectionCount());
+      return new MultiplexedConnectionManager<>(connectionSupplier, redisConfig.getConnectionCount(), syncCommands, asyncCommands);
+    }
+    logger.debug("Using connection pool with {} connections", poolMaxSize);
+    PooledConnectionManager<K, V, C> manager = new PooledConnectionManager<>(connectionSupplier, createPoolConfig(poolMaxSize),
+        redisConfig.isPoolMetrics(), syncCommands, asyncCommands);
+    prewarm(manager.getPool());
+    return manager;
+  }
+
+  private <C extends StatefulConnection<?, ?>> GenericObjectPool<C> createPool(Supplier<C> connectionSupplier, int poolMaxSize) {
+    GenericObjectPool<C> pool = ConnectionPoolSupport.createGenericObjectPool(
+        connectionSupplier,
+        createPoolConfig(poolMaxSize)
     );
+    prewarm(pool);
+    return pool;
   }
 
-  public GenericObjectPool<StatefulRedisConnection<String, String>> getPool(RedisClient client, int poolMaxSize) {
-    GenericObjectPoolConfig<StatefulRedisConnection<String, String>> poolConfig = new GenericObjectPoolConfig<>();
+  private <C extends StatefulConnection<?, ?>> GenericObjectPoolConfig<C> createPoolConfig(int poolMaxSize) {
+    GenericObjectPoolConfig<C> poolConfig = new GenericObjectPoolConfig<>();
+
+    // idle limits default to the pool size so returned connections are kept instead of being closed and reopened
+    int poolMaxIdle = maxIdle >= 0 ? maxIdle : redisConfig.getPoolMaxIdle() >= 0 ? redisConfig.getPoolMaxIdle() : poolMaxSize;
+    int poolMinIdle = minIdle >= 0 ? minIdle : redisConfig.getPoolMinIdle() >= 0 ? redisConfig.getPoolMinIdle() : poolMaxSize;
 
     poolConfig.setMaxTotal(poolMaxSize);
-    poolConfig.setMaxIdle(maxIdle);
-    poolConfig.setMinIdle(minIdle);
-    poolConfig.setTestOnBorrow(true);
-    poolConfig.setTestOnReturn(true);
+    poolConfig.setMaxIdle(poolMaxIdle);
+    poolConfig.setMinIdle(Math.min(poolMinIdle, poolMaxIdle));
+    poolConfig.setTestOnBorrow(redisConfig.isPoolTestOnBorrow());
+    poolConfig.setTestOnReturn(redisConfig.isPoolTestOnReturn());
+    // idle testing only happens on evictor runs, so it needs an interval
     poolConfig.setTestWhileIdle(true);
+    poolConfig.setTimeBetweenEvictionRuns(Duration.ofSeconds(redisConfig.getPoolEvictionInterval()));
     poolConfig.setBlockWhenExhausted(true);
+    return poolConfig;
+  }
 
-    return ConnectionPoolSupport.createGenericObjectPool(
-        client::connect,
-        poolConfig
-    );
+  private void prewarm(GenericObjectPool<?> pool) {
+    if (redisConfig.isPoolPrewarm()) {
+      try {
+        pool.preparePool();
+        logger.debug("Pre-warmed connection pool with {} connections", pool.getNumIdle());
+      } catch (Exception e) {
+        logger.warn("Could not pre-warm connection pool: {}", e.getMessage());
+      }
+    }
+  }
+
+  /*
+    Runs a callback on a short-lived connection to the first endpoint, for use
+    outside the record stores.
+   */
+  public static <R> R withCommands(RedisConfig redisConfig,
+                                   ConnectionManager.CommandCallback<RedisClusterCommands<String, String>, R> callback) throws Exception {
+    RedisClientBuilder clientBuilder = new Builder()
+        .redisConfig(redisConfig)
+        .redisURI(redisConfig.getRedisURIs().get(0))
+        .build();
+    AbstractRedisClient client = redisConfig.isClusterEnabled() ? clientBuilder.getClusterClient() : clientBuilder.getClient();
+    StatefulConnection<String, String> connection = null;
+    try {
+      RedisClusterCommands<String, String> commands;
+      if (client instanceof RedisClusterClient) {
+        StatefulRedisClusterConnection<String, String> clusterConnection = ((RedisClusterClient) client).connect();
+        connection = clusterConnection;
+        commands = clusterConnection.sync();
+      } else {
+        StatefulRedisConnection<String, String> redisConnection = ((RedisClient) client).connect();
+        connection = redisConnection;
+        commands = redisConnection.sync();
+      }
+      return callback.apply(commands);
+    } finally {
+      if (connection != null) {
+        connection.close();
+      }
+      client.shutdown();
+    }
   }
 }
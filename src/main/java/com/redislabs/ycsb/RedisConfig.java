@@ -5,6 +5,8 @@ import io.lettuce.core.StaticCredentialsProvider;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 
 import org.slf4j.Logger;
@@ -14,6 +16,7 @@ public class RedisConfig {
   public static final Logger logger = LoggerFactory.getLogger(RedisConfig.class);
 
   private String redisHost;
+  private String redisHosts;
   private String redisPassword;
   private String redisUsername;
   private int redisPort;
@@ -21,10 +24,72 @@ public class RedisConfig {
   private boolean sslEnabled;
   private String dataPersistence;
 
+  private boolean clusterEnabled;
+  private int clusterRefreshPeriod;
+  private String readFrom;
+  private int ioThreads;
+  private int computationThreads;
+  private String transport;
+
+  private String connectionMode;
+  private int connectionCount;
+  private int poolMaxIdle;
+  private int poolMinIdle;
+  private boolean poolPrewarm;
+  private boolean poolTestOnBorrow;
+  private boolean poolTestOnReturn;
+  private boolean poolMetrics;
+  private int poolEvictionInterval;
+  private boolean asyncEnabled;
+  private int asyncWindow;
+  private int asyncBatch;
+  private boolean cacheEnabled;
+  private int cacheSize;
+  private String cacheMode;
+  private String cachePrefix;
+  private boolean hedgeEnabled;
+  private double hedgePercentile;
+  private int hedgeDelay;
+  private int hedgeDelayMin;
+
   private String searchStrategy;
+  private String searchScanMode;
+  private int searchPageSize;
+  private String searchSort;
+  private String jsonUpdateMode;
   private String indexHash;
   private String indexJson;
   private String indexSet;
+  private int indexShards;
+  private long indexIdBlock;
+  private String idMode;
+  private String indexWriteMode;
+  private String keyLayout;
+  private long keyBucketSize;
+  private int loadBatch;
+  private boolean datasetReuse;
+  private int barrierParties;
+  private String barrierKey;
+  private int barrierTimeout;
+  private String barrierRunId;
+  private String compression;
+  private String compressionMode;
+  private int compressionThreshold;
+  private long recordCount;
+  private int fieldCount;
+  private int fieldLength;
+  private long insertStart;
+  private long insertCount;
+  private boolean doTransactions;
+
+  private int tsBatch;
+  private String tsTimestampKey;
+  private String tsValueKey;
+  private String tsTagPairDelimiter;
+  private String tsQueryTimespanDelimiter;
+  private String tsGroupByKey;
+  private String tsDownsamplingKey;
+  private String workload;
 
   private boolean enterpriseDb;
   private int redisEnterpriseDbUid;
@@ -41,6 +106,7 @@ public class RedisConfig {
   private String confirmationResponse;
 
   public static final String REDIS_HOST = "redis.host";
+  public static final String REDIS_HOSTS = "redis.hosts";
   public static final String REDIS_PORT = "redis.port";
   public static final String REDIS_USERNAME = "redis.username";
   public static final String REDIS_PASSWORD = "redis.password";
@@ -48,10 +114,72 @@ public class RedisConfig {
   public static final String REDIS_SSL = "redis.ssl";
   public static final String REDIS_DATA_PERSISTENCE = "redis.data.persistence";
 
+  public static final String REDIS_CLUSTER = "redis.cluster";
+  public static final String REDIS_CLUSTER_REFRESH_PERIOD = "redis.cluster.refresh.period";
+  public static final String REDIS_READ_FROM = "redis.read.from";
+  public static final String REDIS_IO_THREADS = "redis.io.threads";
+  public static final String REDIS_COMPUTATION_THREADS = "redis.computation.threads";
+  public static final String REDIS_TRANSPORT = "redis.transport";
+
+  public static final String REDIS_CONNECTION_MODE = "redis.connection.mode";
+  public static final String REDIS_CONNECTION_COUNT = "redis.connection.count";
+  public static final String REDIS_POOL_MAX_IDLE = "redis.pool.max.idle";
+  public static final String REDIS_POOL_MIN_IDLE = "redis.pool.min.idle";
+  public static final String REDIS_POOL_PREWARM = "redis.pool.prewarm";
+  public static final String REDIS_POOL_TEST_ON_BORROW = "redis.pool.test.on.borrow";
+  public static final String REDIS_POOL_TEST_ON_RETURN = "redis.pool.test.on.return";
+  public static final String REDIS_POOL_METRICS = "redis.pool.metrics";
+  public static final String REDIS_POOL_EVICTION_INTERVAL = "redis.pool.eviction.interval";
+  public static final String REDIS_ASYNC = "redis.async";
+  public static final String REDIS_ASYNC_WINDOW = "redis.async.window";
+  public static final String REDIS_ASYNC_BATCH = "redis.async.batch";
+  public static final String REDIS_CACHE = "redis.cache";
+  public static final String REDIS_CACHE_SIZE = "redis.cache.size";
+  public static final String REDIS_CACHE_MODE = "redis.cache.mode";
+  public static final String REDIS_CACHE_PREFIX = "redis.cache.prefix";
+  public static final String REDIS_HEDGE = "redis.hedge";
+  public static final String REDIS_HEDGE_PERCENTILE = "redis.hedge.percentile";
+  public static final String REDIS_HEDGE_DELAY = "redis.hedge.delay";
+  public static final String REDIS_HEDGE_DELAY_MIN = "redis.hedge.delay.min";
+
   public static final String REDIS_SEARCH_STRATEGY = "redis.search.strategy";
+  public static final String REDIS_SEARCH_SCAN_MODE = "redis.search.scan.mode";
+  public static final String REDIS_SEARCH_PAGE_SIZE = "redis.search.page.size";
+  public static final String REDIS_SEARCH_SORT = "redis.search.sort";
+  public static final String REDIS_JSON_UPDATE_MODE = "redis.json.update.mode";
   public static final String REDIS_INDEX_HASH = "redis.index.hash";
   public static final String REDIS_INDEX_JSON = "redis.index.json";
   public static final String REDIS_INDEX_SET = "redis.index.set";
+  public static final String REDIS_INDEX_SHARDS = "redis.index.shards";
+  public static final String REDIS_INDEX_ID_BLOCK = "redis.index.id.block";
+  public static final String REDIS_ID_MODE = "redis.id.mode";
+  public static final String REDIS_INDEX_WRITE = "redis.index.write";
+  public static final String REDIS_KEY_LAYOUT = "redis.key.layout";
+  public static final String REDIS_KEY_BUCKET_SIZE = "redis.key.bucket.size";
+  public static final String REDIS_LOAD_BATCH = "redis.load.batch";
+  public static final String REDIS_DATASET_REUSE = "redis.dataset.reuse";
+  public static final String REDIS_BARRIER = "redis.barrier";
+  public static final String REDIS_BARRIER_KEY = "redis.barrier.key";
+  public static final String REDIS_BARRIER_TIMEOUT = "redis.barrier.timeout";
+  public static final String REDIS_BARRIER_RUN_ID = "redis.barrier.run.id";
+  public static final String REDIS_COMPRESSION = "redis.compression";
+  public static final String REDIS_COMPRESSION_MODE = "redis.compression.mode";
+  public static final String REDIS_COMPRESSION_THRESHOLD = "redis.compression.threshold";
+  public static final String YCSB_RECORD_COUNT = "recordcount";
+  public static final String YCSB_FIELD_COUNT = "fieldcount";
+  public static final String YCSB_FIELD_LENGTH = "fieldlength";
+  public static final String YCSB_INSERT_START = "insertstart";
+  public static final String YCSB_INSERT_COUNT = "insertcount";
+  public static final String YCSB_DO_TRANSACTIONS = "dotransactions";
+
+  public static final String REDIS_TS_BATCH = "redis.ts.batch";
+  public static final String TS_TIMESTAMP_KEY = "timestampkey";
+  public static final String TS_VALUE_KEY = "valuekey";
+  public static final String TS_TAG_PAIR_DELIMITER = "tagpairdelimiter";
+  public static final String TS_QUERY_TIMESPAN_DELIMITER = "querytimespandelimiter";
+  public static final String TS_GROUP_BY_KEY = "groupbykey";
+  public static final String TS_DOWNSAMPLING_KEY = "downsamplingkey";
+  public static final String YCSB_WORKLOAD = "workload";
 
   public static final String REDIS_ENTERPRISE = "redis.enterprise";
   public static final String REDIS_ENTERPRISE_DB_UID = "redis.enterprise.db.uid";
@@ -71,6 +199,7 @@ public class RedisConfig {
   public static final String REDIS_PASSWORD_ENV_VAR = "REDIS_PASSWORD";
   public static final String REDIS_DATABASE_ENV_VAR = "REDIS_DATABASE";
   public static final String REDIS_SSL_ENV_VAR = "REDIS_SSL";
+  public static final String REDIS_CLUSTER_ENV_VAR = "REDIS_CLUSTER";
   public static final String REDIS_SEARCH_STRATEGY_ENV_VAR = "REDIS_SEARCH_STRATEGY";
 
   public static final String REDIS_ENTERPRISE_ENV_VAR = "REDIS_ENTERPRISE";
@@ -93,6 +222,7 @@ public class RedisConfig {
     String redisPasswordEnvVar = System.getenv(REDIS_PASSWORD_ENV_VAR);
     String redisDatabaseEnvVar = System.getenv(REDIS_DATABASE_ENV_VAR);
     String redisSslEnvVar = System.getenv(REDIS_SSL_ENV_VAR);
+    String redisClusterEnvVar = System.getenv(REDIS_CLUSTER_ENV_VAR);
     String redisSearchStrategyEnvVar = System.getenv(REDIS_SEARCH_STRATEGY_ENV_VAR);
 
     String redisEnterpriseEnvVar = System.getenv(REDIS_ENTERPRISE_ENV_VAR);
@@ -101,6 +231,7 @@ public class RedisConfig {
     String redisEnterpriseApiHostEnvVar = System.getenv(REDIS_ENTERPRISE_API_HOST_ENV_VAR);
 
     this.redisHost = properties.getProperty(REDIS_HOST, "localhost");
+    this.redisHosts = properties.getProperty(REDIS_HOSTS, "");
     this.redisPassword = properties.getProperty(REDIS_PASSWORD);
     this.redisUsername = properties.getProperty(REDIS_USERNAME);
     this.redisPort = Integer.parseInt(properties.getProperty(REDIS_PORT, "6379"));
@@ -108,10 +239,73 @@ public class RedisConfig {
     this.sslEnabled = Boolean.parseBoolean(properties.getProperty(REDIS_SSL, "false"));
     this.dataPersistence = properties.getProperty(REDIS_DATA_PERSISTENCE, "AOF");
 
+    this.clusterEnabled = Boolean.parseBoolean(properties.getProperty(REDIS_CLUSTER, "false"));
+    this.clusterRefreshPeriod = Integer.parseInt(properties.getProperty(REDIS_CLUSTER_REFRESH_PERIOD, "30"));
+    this.readFrom = properties.getProperty(REDIS_READ_FROM, "UPSTREAM");
+    this.ioThreads = Integer.parseInt(properties.getProperty(REDIS_IO_THREADS, "0"));
+    this.computationThreads = Integer.parseInt(properties.getProperty(REDIS_COMPUTATION_THREADS, "0"));
+    this.transport = properties.getProperty(REDIS_TRANSPORT, "NIO");
+
+    this.connectionMode = properties.getProperty(REDIS_CONNECTION_MODE, "POOL");
+    this.connectionCount = Integer.parseInt(properties.getProperty(REDIS_CONNECTION_COUNT,
+        String.valueOf(Runtime.getRuntime().availableProcessors())));
+    this.poolMaxIdle = Integer.parseInt(properties.getProperty(REDIS_POOL_MAX_IDLE, "-1"));
+    this.poolMinIdle = Integer.parseInt(properties.getProperty(REDIS_POOL_MIN_IDLE, "-1"));
+    this.poolPrewarm = Boolean.parseBoolean(properties.getProperty(REDIS_POOL_PREWARM, "true"));
+    this.poolTestOnBorrow = Boolean.parseBoolean(properties.getProperty(REDIS_POOL_TEST_ON_BORROW, "false"));
+    this.poolTestOnReturn = Boolean.parseBoolean(properties.getProperty(REDIS_POOL_TEST_ON_RETURN, "false"));
+    this.poolMetrics = Boolean.parseBoolean(properties.getProperty(REDIS_POOL_METRICS, "false"));
+    this.poolEvictionInterval = Integer.parseInt(properties.getProperty(REDIS_POOL_EVICTION_INTERVAL, "30"));
+    this.asyncEnabled = Boolean.parseBoolean(properties.getProperty(REDIS_ASYNC, "false"));
+    this.asyncWindow = Integer.parseInt(properties.getProperty(REDIS_ASYNC_WINDOW, "64"));
+    this.asyncBatch = Integer.parseInt(properties.getProperty(REDIS_ASYNC_BATCH, "16"));
+    this.cacheEnabled = Boolean.parseBoolean(properties.getProperty(REDIS_CACHE, "false"));
+    this.cacheSize = Integer.parseInt(properties.getProperty(REDIS_CACHE_SIZE, "100000"));
+    this.cacheMode = properties.getProperty(REDIS_CACHE_MODE, "BCAST");
+    this.cachePrefix = properties.getProperty(REDIS_CACHE_PREFIX, "user");
+    this.hedgeEnabled = Boolean.parseBoolean(properties.getProperty(REDIS_HEDGE, "false"));
+    this.hedgePercentile = Double.parseDouble(properties.getProperty(REDIS_HEDGE_PERCENTILE, "95"));
+    this.hedgeDelay = Integer.parseInt(properties.getProperty(REDIS_HEDGE_DELAY, "1000"));
+    this.hedgeDelayMin = Integer.parseInt(properties.getProperty(REDIS_HEDGE_DELAY_MIN, "200"));
+
     this.searchStrategy = properties.getProperty(REDIS_SEARCH_STRATEGY, "HASH");
+    this.searchScanMode = properties.getProperty(REDIS_SEARCH_SCAN_MODE, "FETCH");
+    this.searchPageSize = Integer.parseInt(properties.getProperty(REDIS_SEARCH_PAGE_SIZE, "100"));
+    this.searchSort = properties.getProperty(REDIS_SEARCH_SORT, "NONE");
+    this.jsonUpdateMode = properties.getProperty(REDIS_JSON_UPDATE_MODE, "DOCUMENT");
     this.indexHash = properties.getProperty(REDIS_INDEX_HASH, "id_hash_index");
     this.indexJson = properties.getProperty(REDIS_INDEX_JSON, "id_json_index");
     this.indexSet = properties.getProperty(REDIS_INDEX_SET, "_key_index");
+    this.indexShards = Integer.parseInt(properties.getProperty(REDIS_INDEX_SHARDS, "1"));
+    this.indexIdBlock = Long.parseLong(properties.getProperty(REDIS_INDEX_ID_BLOCK, "1000"));
+    this.idMode = properties.getProperty(REDIS_ID_MODE, "AUTO");
+    this.indexWriteMode = properties.getProperty(REDIS_INDEX_WRITE, "SEQUENTIAL");
+    this.keyLayout = properties.getProperty(REDIS_KEY_LAYOUT, "NONE");
+    this.keyBucketSize = Long.parseLong(properties.getProperty(REDIS_KEY_BUCKET_SIZE, "1000"));
+    this.loadBatch = Integer.parseInt(properties.getProperty(REDIS_LOAD_BATCH, "0"));
+    this.datasetReuse = Boolean.parseBoolean(properties.getProperty(REDIS_DATASET_REUSE, "false"));
+    this.barrierParties = Integer.parseInt(properties.getProperty(REDIS_BARRIER, "0"));
+    this.barrierKey = properties.getProperty(REDIS_BARRIER_KEY, "_ycsb_barrier");
+    this.barrierTimeout = Integer.parseInt(properties.getProperty(REDIS_BARRIER_TIMEOUT, "300"));
+    this.barrierRunId = properties.getProperty(REDIS_BARRIER_RUN_ID, "");
+    this.compression = properties.getProperty(REDIS_COMPRESSION, "NONE");
+    this.compressionMode = properties.getProperty(REDIS_COMPRESSION_MODE, "FIELD");
+    this.compressionThreshold = Integer.parseInt(properties.getProperty(REDIS_COMPRESSION_THRESHOLD, "64"));
+    this.recordCount = Long.parseLong(properties.getProperty(YCSB_RECORD_COUNT, "0"));
+    this.fieldCount = Integer.parseInt(properties.getProperty(YCSB_FIELD_COUNT, "10"));
+    this.fieldLength = Integer.parseInt(properties.getProperty(YCSB_FIELD_LENGTH, "100"));
+    this.insertStart = Long.parseLong(properties.getProperty(YCSB_INSERT_START, "0"));
+    this.insertCount = Long.parseLong(properties.getProperty(YCSB_INSERT_COUNT, String.valueOf(recordCount - insertStart)));
+    this.doTransactions = Boolean.parseBoolean(properties.getProperty(YCSB_DO_TRANSACTIONS, "true"));
+
+    this.tsBatch = Integer.parseInt(properties.getProperty(REDIS_TS_BATCH, "16"));
+    this.tsTimestampKey = properties.getProperty(TS_TIMESTAMP_KEY, "YCSBTS");
+    this.tsValueKey = properties.getProperty(TS_VALUE_KEY, "YCSBV");
+    this.tsTagPairDelimiter = properties.getProperty(TS_TAG_PAIR_DELIMITER, "=");
+    this.tsQueryTimespanDelimiter = properties.getProperty(TS_QUERY_TIMESPAN_DELIMITER, ",");
+    this.tsGroupByKey = properties.getProperty(TS_GROUP_BY_KEY, "YCSBGB");
+    this.tsDownsamplingKey = properties.getProperty(TS_DOWNSAMPLING_KEY, "YCSBDS");
+    this.workload = properties.getProperty(YCSB_WORKLOAD, "");
 
     this.enterpriseDb = Boolean.parseBoolean(properties.getProperty(REDIS_ENTERPRISE, "false"));
     this.redisEnterpriseDbUid = Integer.parseInt(properties.getProperty(REDIS_ENTERPRISE_DB_UID, "1"));
@@ -145,6 +339,9 @@ public class RedisConfig {
     if (redisSslEnvVar != null && !redisSslEnvVar.isEmpty()) {
       this.sslEnabled = Boolean.parseBoolean(redisSslEnvVar);
     }
+    if (redisClusterEnvVar != null && !redisClusterEnvVar.isEmpty()) {
+      this.clusterEnabled = Boolean.parseBoolean(redisClusterEnvVar);
+    }
     if (redisSearchStrategyEnvVar != null && !redisSearchStrategyEnvVar.isEmpty()) {
       this.searchStrategy = redisSearchStrategyEnvVar;
     }
@@ -212,6 +409,114 @@ public class RedisConfig {
     return dataPersistence;
   }
 
+  public boolean isClusterEnabled() {
+    return clusterEnabled;
+  }
+
+  public int getClusterRefreshPeriod() {
+    return clusterRefreshPeriod;
+  }
+
+  public String getReadFrom() {
+    return readFrom;
+  }
+
+  public int getIoThreads() {
+    return ioThreads;
+  }
+
+  public int getComputationThreads() {
+    return computationThreads;
+  }
+
+  public String getTransport() {
+    return transport;
+  }
+
+  public String getConnectionMode() {
+    return connectionMode;
+  }
+
+  public boolean isMultiplexed() {
+    return connectionMode.equalsIgnoreCase("MULTIPLEXED");
+  }
+
+  public int getConnectionCount() {
+    return connectionCount;
+  }
+
+  public int getPoolMaxIdle() {
+    return poolMaxIdle;
+  }
+
+  public int getPoolMinIdle() {
+    return poolMinIdle;
+  }
+
+  public boolean isPoolPrewarm() {
+    return poolPrewarm;
+  }
+
+  public boolean isPoolTestOnBorrow() {
+    return poolTestOnBorrow;
+  }
+
+  public boolean isPoolTestOnReturn() {
+    return poolTestOnReturn;
+  }
+
+  public boolean isPoolMetrics() {
+    return poolMetrics;
+  }
+
+  public int getPoolEvictionInterval() {
+    return poolEvictionInterval;
+  }
+
+  public boolean isAsyncEnabled() {
+    return asyncEnabled;
+  }
+
+  public int getAsyncWindow() {
+    return asyncWindow;
+  }
+
+  public int getAsyncBatch() {
+    return asyncBatch;
+  }
+
+  public boolean isCacheEnabled() {
+    return cacheEnabled;
+  }
+
+  public int getCacheSize() {
+    return cacheSize;
+  }
+
+  public String getCacheMode() {
+    return cacheMode;
+  }
+
+  public String getCachePrefix() {
+    return cachePrefix;
+  }
+
+  public boolean isHedgeEnabled() {
+    return hedgeEnabled;
+  }
+
+  public double getHedgePercentile() {
+    return hedgePercentile;
+  }
+
+  public int getHedgeDelay() {
+    return hedgeDelay;
+  }
+
+  public int getHedgeDelayMin() {
+    return hedgeDelayMin;
+  }
+
   public boolean isEnterpriseDb() {
     return enterpriseDb;
   }
@@ -220,6 +525,30 @@ public class RedisConfig {
     return searchStrategy;
   }
 
+  public String getSearchScanMode() {
+    return searchScanMode;
+  }
+
+  public int getSearchPageSize() {
+    return searchPageSize;
+  }
+
+  public String getSearchSort() {
+    return searchSort;
+  }
+
+  public boolean isSearchSorted() {
+    return !searchSort.equalsIgnoreCase("NONE");
+  }
+
+  public boolean isIdSortable() {
+    return searchSort.equalsIgnoreCase("SORTABLE");
+  }
+
+  public String getJsonUpdateMode() {
+    return jsonUpdateMode;
+  }
+
   public String getIndexHash() {
     return indexHash;
   }
@@ -232,6 +561,130 @@ public class RedisConfig {
     return indexSet;
   }
 
+  public int getIndexShards() {
+    return indexShards;
+  }
+
+  public long getIndexIdBlock() {
+    return indexIdBlock;
+  }
+
+  public String getIdMode() {
+    return idMode;
+  }
+
+  public String getIndexWriteMode() {
+    return indexWriteMode;
+  }
+
+  public String getKeyLayout() {
+    return keyLayout;
+  }
+
+  public long getKeyBucketSize() {
+    return keyBucketSize;
+  }
+
+  public int getLoadBatch() {
+    return loadBatch;
+  }
+
+  public boolean isDatasetReuse() {
+    return datasetReuse;
+  }
+
+  public int getBarrierParties() {
+    return barrierParties;
+  }
+
+  public String getBarrierKey() {
+    return barrierKey;
+  }
+
+  public int getBarrierTimeout() {
+    return barrierTimeout;
+  }
+
+  public String getBarrierRunId() {
+    return barrierRunId;
+  }
+
+  public String getCompression() {
+    return compression;
+  }
+
+  public String getCompressionMode() {
+    return compressionMode;
+  }
+
+  public int getCompressionThreshold() {
+    return compressionThreshold;
+  }
+
+  public long getRecordCount() {
+    return recordCount;
+  }
+
+  public int getFieldCount() {
+    return fieldCount;
+  }
+
+  public int getFieldLength() {
+    return fieldLength;
+  }
+
+  public long getInsertStart() {
+    return insertStart;
+  }
+
+  public long getInsertCount() {
+    return insertCount;
+  }
+
+  public boolean isDoTransactions() {
+    return doTransactions;
+  }
+
+  public boolean isBulkLoad() {
+    return !doTransactions && loadBatch > 1;
+  }
+
+  public int getTsBatch() {
+    return tsBatch;
+  }
+
+  public String getTsTimestampKey() {
+    return tsTimestampKey;
+  }
+
+  public String getTsValueKey() {
+    return tsValueKey;
+  }
+
+  public String getTsTagPairDelimiter() {
+    return tsTagPairDelimiter;
+  }
+
+  public String getTsQueryTimespanDelimiter() {
+    return tsQueryTimespanDelimiter;
+  }
+
+  public String getTsGroupByKey() {
+    return tsGroupByKey;
+  }
+
+  public String getTsDownsamplingKey() {
+    return tsDownsamplingKey;
+  }
+
+  public String getWorkload() {
+    return workload;
+  }
+
+  public boolean isTimeSeriesWorkload() {
+    return workload.endsWith("TimeSeriesWorkload");
+  }
+
   public int getRedisEnterpriseDbUid() {
     return redisEnterpriseDbUid;
   }
@@ -276,11 +729,39 @@ public class RedisConfig {
     return confirmationResponse != null ? confirmationResponse : "no";
   }
 
+  /*
+    Endpoints listed in redis.hosts as host[:port], separated by commas.
+    Without the property the single redis.host endpoint is returned.
+   */
+  public List<RedisURI> getRedisURIs() {
+    List<RedisURI> uris = new ArrayList<>();
+    for (String endpoint : redisHosts.split(",")) {
+      endpoint = endpoint.trim();
+      if (endpoint.isEmpty()) {
+        continue;
+      }
+      int colon = endpoint.lastIndexOf(':');
+      if (colon > 0) {
+        uris.add(getRedisURI(endpoint.substring(0, colon), Integer.parseInt(endpoint.substring(colon + 1))));
+      } else {
+        uris.add(getRedisURI(endpoint, redisPort));
+      }
+    }
+    if (uris.isEmpty()) {
+      uris.add(getRedisURI());
+    }
+    return uris;
+  }
+
   public RedisURI getRedisURI() {
+    return getRedisURI(redisHost, redisPort);
+  }
+
+  private RedisURI getRedisURI(String host, int port) {
     RedisURI redisURI = new RedisURI();
-    redisURI.setHost(redisHost);
+    redisURI.setHost(host);
     redisURI.setDatabase(redisDatabase);
-    redisURI.setPort(redisPort);
+    redisURI.setPort(port);
 
     if (redisPassword != null && !redisPassword.isEmpty()) {
       String userName;
@@ -0,0 +1,94 @@
+package com.redislabs.ycsb;
+
+import com.codelry.util.ycsb.measurements.Measurements;
+
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.cluster.api.sync.RedisClusterCommands;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+  Start barrier shared by several load generator processes.
+
+  Every process increments a counter key on arrival and waits until the
+  counter reaches the end of its generation, so the same key can be reused
+  run after run without being reset.  A process that gives up takes its
+  arrival back out of the counter.  A process that dies while waiting
+  cannot, so set redis.barrier.run.id to a fresh value per run to keep a
+  stale arrival from shifting later generations.  Load and run phases use
+  separate keys.
+
+  The wait happens inside DB.init(), which YCSB counts as part of the run.
+  Only the first client thread waits at the barrier, and the others wait for
+  it to finish init, so the wait adds to the run time once whatever the
+  thread count.  It is printed with the results as an [OVERALL] BarrierWait
+  line, and recorded under the BARRIER-WAIT measurement, so that
+  merge-results can report throughput with the wait taken out.
+ */
+public class RunBarrier {
+  private static final Logger logger = LoggerFactory.getLogger(RunBarrier.class);
+
+  public static final String MEASUREMENT = "BARRIER-WAIT";
+  public static final String OVERALL_PREFIX = "[OVERALL], BarrierWait(us), ";
+
+  private static final long POLL_MILLIS = 50;
+  private static final long KEY_TTL_SECONDS = 86400;
+  // withdraws an arrival only while its generation is still open; -1 means it was released
+  private static final String WITHDRAW_SCRIPT =
+      "local n = tonumber(redis.call('GET', KEYS[1]) or '0') " +
+      "if n >= tonumber(ARGV[1]) then return -1 end " +
+      "if n > 0 then return redis.call('DECR', KEYS[1]) end " +
+      "return 0";
+
+  private final int parties;
+  private final String key;
+  private final long timeoutMillis;
+
+  public RunBarrier(RedisConfig redisConfig) {
+    String runId = redisConfig.getBarrierRunId();
+    this.parties = redisConfig.getBarrierParties();
+    this.key = redisConfig.getBarrierKey()
+        + (runId == null || runId.isEmpty() ? "" : ":" + runId)
+        + ":" + (redisConfig.isDoTransactions() ? "run" : "load");
+    this.timeoutMillis = TimeUnit.SECONDS.toMillis(redisConfig.getBarrierTimeout());
+  }
+
+  public boolean isEnabled() {
+    return parties > 1;
+  }
+
+  public void await(RedisClusterCommands<String, String> commands) throws Exception {
+    long start = System.nanoTime();
+    long arrival = commands.incr(key);
+    commands.expire(key, KEY_TTL_SECONDS);
+    long release = ((arrival - 1) / parties + 1) * parties;
+    logger.info("Waiting at barrier {} ({} of {} arrived)", key, arrival - (release - parties), parties);
+
+    long deadline = System.currentTimeMillis() + timeoutMillis;
+    while (true) {
+      String value = commands.get(key);
+      boolean expired = System.currentTimeMillis() > deadline;
+      if (expired && (value == null || Long.parseLong(value) < release)) {
+        Long withdrawn = commands.eval(WITHDRAW_SCRIPT, ScriptOutputType.INTEGER, new String[] { key }, String.valueOf(release));
+        if (withdrawn != null && withdrawn >= 0) {
+          throw new TimeoutException("Timed out waiting for " + parties + " generators at barrier " + key);
+        }
+        // the generation filled up between the read and the withdrawal
+        value = String.valueOf(release);
+      }
+      if (value != null && Long.parseLong(value) >= release) {
+        long waited = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+        Measurements.getMeasurements().measure(MEASUREMENT, (int) Math.min(Integer.MAX_VALUE, waited));
+        // YCSB writes its results to standard output unless exportfile is set
+        System.out.println(OVERALL_PREFIX + waited);
+        logger.info("Barrier {} released after {} ms", key, waited / 1000);
+        return;
+      }
+      Thread.sleep(POLL_MILLIS);
+    }
+  }
+}
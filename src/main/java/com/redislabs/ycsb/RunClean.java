@@ -5,11 +5,15 @@ import com.codelry.util.ycsb.TestCleanup;
 import com.redis.lettucemod.RedisModulesClient;
 import com.redis.lettucemod.api.StatefulRedisModulesConnection;
 import com.redis.lettucemod.api.sync.RedisModulesCommands;
+import com.redis.lettucemod.cluster.RedisModulesClusterClient;
+import com.redis.lettucemod.cluster.api.StatefulRedisModulesClusterConnection;
+import io.lettuce.core.RedisClient;
 import io.lettuce.core.RedisURI;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.List;
 import java.util.Properties;
 
 public final class RunClean extends TestCleanup {
@@ -30,20 +34,50 @@ public final class RunClean extends TestCleanup {
   public static void flushDatabase(Properties properties) {
     RedisConfig redisConfig = new RedisConfig(properties);
 
-    RedisURI redisURI = redisConfig.getRedisURI();
-    RedisModulesClient modulesClient = RedisModulesClient.create(redisURI);
-    StatefulRedisModulesConnection<String, String> modulesConnection = modulesClient.connect();
-    RedisModulesCommands<String, String> modulesCommands = modulesConnection.sync();
+    if (redisConfig.isDatasetReuse()) {
+      logger.info("Keeping dataset for reuse");
+      return;
+    }
+
+    RedisURI redisURI = redisConfig.getRedisURIs().get(0);
+    RedisModulesCommands<String, String> modulesCommands;
+    if (redisConfig.isClusterEnabled()) {
+      RedisModulesClusterClient modulesClient = RedisModulesClusterClient.create(redisURI);
+      StatefulRedisModulesClusterConnection<String, String> modulesConnection = modulesClient.connect();
+      modulesCommands = modulesConnection.sync();
+    } else {
+      RedisModulesClient modulesClient = RedisModulesClient.create(redisURI);
+      StatefulRedisModulesConnection<String, String> modulesConnection = modulesClient.connect();
+      modulesCommands = modulesConnection.sync();
+    }
 
     try {
       logger.info("Flushing database");
       modulesCommands.flushdb();
+      flushEndpoints(redisConfig);
     } catch (Exception e) {
       logger.error("Error flushing database: {}", e.getMessage(), e);
       System.exit(1);
     }
   }
 
+  /*
+    Flushes the endpoints after the first one when redis.hosts lists more
+    than one server.
+   */
+  public static void flushEndpoints(RedisConfig redisConfig) {
+    List<RedisURI> uris = redisConfig.getRedisURIs();
+    for (RedisURI uri : uris.subList(1, uris.size())) {
+      RedisClient client = RedisClient.create(uri);
+      try {
+        logger.info("Flushing database on {}:{}", uri.getHost(), uri.getPort());
+        client.connect().sync().flushdb();
+      } finally {
+        client.shutdown();
+      }
+    }
+  }
+
   public RunClean() {
     super();
   }
@@ -5,6 +5,8 @@ import com.codelry.util.ycsb.TestSetup;
 import com.redis.lettucemod.RedisModulesClient;
 import com.redis.lettucemod.api.StatefulRedisModulesConnection;
 import com.redis.lettucemod.api.sync.RedisModulesCommands;
+import com.redis.lettucemod.cluster.RedisModulesClusterClient;
+import com.redis.lettucemod.cluster.api.StatefulRedisModulesClusterConnection;
 import com.redis.lettucemod.search.CreateOptions;
 import com.redis.lettucemod.search.Field;
 import com.redis.lettucemod.search.NumericField;
@@ -57,17 +59,41 @@ public final class RunPrep extends TestSetup {
   public static void testPrep(RedisConfig redisConfig) {
     boolean enterpriseDb = redisConfig.isEnterpriseDb();
 
-    RedisURI redisURI = redisConfig.getRedisURI();
-    RedisModulesClient modulesClient = RedisModulesClient.create(redisURI);
-    StatefulRedisModulesConnection<String, String> modulesConnection = modulesClient.connect();
-    RedisModulesCommands<String, String> modulesCommands = modulesConnection.sync();
+    RedisURI redisURI = redisConfig.getRedisURIs().get(0);
+    RedisModulesCommands<String, String> modulesCommands;
+    if (redisConfig.isClusterEnabled()) {
+      RedisModulesClusterClient modulesClient = RedisModulesClusterClient.create(redisURI);
+      StatefulRedisModulesClusterConnection<String, String> modulesConnection = modulesClient.connect();
+      modulesCommands = modulesConnection.sync();
+    } else {
+      RedisModulesClient modulesClient = RedisModulesClient.create(redisURI);
+      StatefulRedisModulesConnection<String, String> modulesConnection = modulesClient.connect();
+      modulesCommands = modulesConnection.sync();
+    }
     String searchStrategy = redisConfig.getSearchStrategy();
+    boolean sortable = redisConfig.isIdSortable();
     String jsonIndexName = redisConfig.getIndexJson();
     String hashIndexName = redisConfig.getIndexHash();
 
+    DatasetMetadata dataset = new DatasetMetadata(redisConfig);
+    if (redisConfig.isDatasetReuse()) {
+      try {
+        if (dataset.isLoaded(modulesCommands)) {
+          logger.info("Reusing loaded dataset {} ({})", dataset.getFingerprint(), dataset.getDescription());
+          return;
+        }
+      } catch (Exception e) {
+        logger.warn("Could not read dataset metadata: {}", e.getMessage());
+      }
+    }
+
     try {
       logger.info("Flushing database");
       modulesCommands.flushdb();
+      RunClean.flushEndpoints(redisConfig);
+      if (redisConfig.isDatasetReuse()) {
+        dataset.reset(modulesCommands);
+      }
     } catch (Exception e) {
       logger.error("Error flushing database: {}", e.getMessage(), e);
       System.exit(1);
@@ -80,7 +106,11 @@ public final class RunPrep extends TestSetup {
 
     try {
       if (searchStrategy.equals("JSON")) {
-        NumericField<String> idJsonField = Field.numeric("$.id").as("id").build();
+        NumericField.Builder<String> idJsonBuilder = Field.numeric("$.id").as("id");
+        if (sortable) {
+          idJsonBuilder.sortable();
+        }
+        NumericField<String> idJsonField = idJsonBuilder.build();
 
         CreateOptions<String, String> optionsJson = CreateOptions.<String, String>builder()
             .on(CreateOptions.DataType.JSON)
@@ -89,13 +119,17 @@ public final class RunPrep extends TestSetup {
 
         String resultJson = ftCreateSafe(modulesCommands, jsonIndexName, optionsJson, idJsonField);
         if (resultJson.equals("OK")) {
-          logger.info("JSON Index {} created", jsonIndexName);
+          logger.info("JSON Index {} created (id sortable: {})", jsonIndexName, sortable);
         } else {
           logger.error("Error creating json index {}: {}", jsonIndexName, resultJson);
           System.exit(1);
         }
       } else if (searchStrategy.equals("HASH")) {
-        NumericField<String> idHashField = Field.numeric("id").as("id").build();
+        NumericField.Builder<String> idHashBuilder = Field.numeric("id").as("id");
+        if (sortable) {
+          idHashBuilder.sortable();
+        }
+        NumericField<String> idHashField = idHashBuilder.build();
 
         CreateOptions<String, String> optionsHash = CreateOptions.<String, String>builder()
             .on(CreateOptions.DataType.HASH)
@@ -104,7 +138,7 @@ public final class RunPrep extends TestSetup {
 
         String resultHash = ftCreateSafe(modulesCommands, hashIndexName, optionsHash, idHashField);
         if (resultHash.equals("OK")) {
-          logger.info("Hash Index {} created", hashIndexName);
+          logger.info("Hash Index {} created (id sortable: {})", hashIndexName, sortable);
         } else {
           logger.error("Error creating hash index {}: {}", hashIndexName, resultHash);
           System.exit(1);
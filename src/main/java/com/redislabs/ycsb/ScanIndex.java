@@ -0,0 +1,117 @@
+package com.redislabs.ycsb;
+
+import io.lettuce.core.ScoredValue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+  Sorted set index used by the Hash record stores to implement scans.
+
+  With a single shard all keys go into one ZSET scored by a JVM-local counter.
+  With more than one shard the ZSET is split into hash-tagged buckets so that
+  they land on different slots, and scores are leased in blocks from a
+  counter key in Redis so they are unique across load generators.
+
+  redis.id.mode overrides how scores are allocated: LOCAL always uses the
+  JVM counter, LEASE always leases blocks from Redis, and PARTITION starts the
+  JVM counter at insertstart so generators that split the key range with
+  insertstart/insertcount also get disjoint scores without a round trip.
+  Partitions only describe the load phase, so in the run phase PARTITION
+  leases blocks placed above recordcount, where no loaded record can sit.
+ */
+public class ScanIndex {
+
+  public interface IdLease {
+    long incrementBy(String key, long amount) throws Exception;
+  }
+
+  private final AtomicLong counter = new AtomicLong(0);
+  private final String indexName;
+  private final int shards;
+  private final long blockSize;
+  private final String sequenceKey;
+  private final List<String> indexKeys;
+  private final boolean leased;
+  private final long leaseBase;
+  private long nextId = 0;
+  private long lastId = -1;
+
+  public ScanIndex(RedisConfig redisConfig) {
+    this.indexName = redisConfig.getIndexSet();
+    this.shards = Math.max(1, redisConfig.getIndexShards());
+    this.blockSize = Math.max(1, redisConfig.getIndexIdBlock());
+    this.sequenceKey = indexName + ":seq";
+    String idMode = redisConfig.getIdMode().toUpperCase();
+    switch (idMode) {
+      case "AUTO":
+        this.leased = shards > 1;
+        break;
+      case "LOCAL":
+        this.leased = false;
+        break;
+      case "LEASE":
+        this.leased = true;
+        break;
+      case "PARTITION":
+        this.leased = redisConfig.isDoTransactions();
+        if (!leased) {
+          counter.set(redisConfig.getInsertStart());
+        }
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown id mode: " + idMode);
+    }
+    this.leaseBase = idMode.equals("PARTITION") ? redisConfig.getRecordCount() : 0;
+    this.indexKeys = new ArrayList<>(shards);
+    if (shards == 1) {
+      indexKeys.add(indexName);
+    } else {
+      for (int i = 0; i < shards; i++) {
+        indexKeys.add(indexName + ":{" + i + "}");
+      }
+    }
+  }
+
+  public boolean isSharded() {
+    return shards > 1;
+  }
+
+  public String indexKey(String key) {
+    if (shards == 1) {
+      return indexName;
+    }
+    return indexKeys.get(Math.floorMod(key.hashCode(), shards));
+  }
+
+  public List<String> indexKeys() {
+    return Collections.unmodifiableList(indexKeys);
+  }
+
+  public long nextScore(IdLease lease) throws Exception {
+    if (!leased) {
+      return counter.incrementAndGet();
+    }
+    synchronized (this) {
+      if (nextId > lastId) {
+        lastId = lease.incrementBy(sequenceKey, blockSize);
+        nextId = lastId - blockSize + 1;
+      }
+      return leaseBase + nextId++;
+    }
+  }
+
+  public <T> List<T> sortedKeys(List<ScoredValue<T>> members, int count) {
+    if (shards > 1) {
+      members.sort((a, b) -> Double.compare(a.getScore(), b.getScore()));
+    }
+    int size = Math.min(count, members.size());
+    List<T> keys = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      keys.add(members.get(i).getValue());
+    }
+    return keys;
+  }
+}
@@ -0,0 +1,53 @@
+package com.redislabs.ycsb;
+
+import java.nio.charset.StandardCharsets;
+
+/*
+  Maps keys to one of a fixed list of standalone endpoints.
+
+  Keys are hashed with 64-bit FNV-1a and placed with jump consistent hashing,
+  so adding an endpoint to the end of the list only moves about 1/n of the
+  keys and the mapping needs no lookup table.
+ */
+public class ShardRouter {
+
+  private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  private final int endpoints;
+
+  public ShardRouter(int endpoints) {
+    this.endpoints = Math.max(1, endpoints);
+  }
+
+  public int size() {
+    return endpoints;
+  }
+
+  public int route(String key) {
+    if (endpoints == 1) {
+      return 0;
+    }
+    return jumpHash(fnv1a(key), endpoints);
+  }
+
+  private static long fnv1a(String key) {
+    long hash = FNV_OFFSET;
+    for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+      hash ^= b & 0xff;
+      hash *= FNV_PRIME;
+    }
+    return hash;
+  }
+
+  private static int jumpHash(long key, int buckets) {
+    long b = -1;
+    long j = 0;
+    while (j < buckets) {
+      b = j;
+      key = key * 2862933555777941757L + 1;
+      j = (long) ((b + 1) * ((double) (1L << 31) / (double) ((key >>> 33) + 1)));
+    }
+    return (int) b;
+  }
+}
@@ -0,0 +1,397 @@
+package com.redislabs.ycsb;
+
+import com.codelry.util.ycsb.ByteIterator;
+import com.codelry.util.ycsb.DBException;
+import com.codelry.util.ycsb.NumericByteIterator;
+import com.codelry.util.ycsb.Status;
+
+import io.lettuce.core.AbstractRedisClient;
+import io.lettuce.core.RedisCommandExecutionException;
+import io.lettuce.core.codec.StringCodec;
+import io.lettuce.core.output.ArrayOutput;
+import io.lettuce.core.output.StatusOutput;
+import io.lettuce.core.protocol.CommandArgs;
+import io.lettuce.core.protocol.ProtocolKeyword;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+  RedisTimeSeries record store for the YCSB TimeSeriesWorkload.
+
+  Each metric and tag combination is one series, created on first use with
+  the metric and tags as labels.  Samples are buffered per series, shared by
+  all client threads, and written with TS.MADD once a batch is full; every
+  series is a single key, so a batch never spans slots.  Reads and scans map
+  to TS.MRANGE filtered on the labels, with downsampling mapped to
+  AGGREGATION and group-by to GROUPBY metric REDUCE.
+ */
+public class TimeSeriesRecordStore implements RecordStore {
+  private static final Logger logger = LoggerFactory.getLogger(TimeSeriesRecordStore.class);
+
+  private static final AtomicInteger THREADS = new AtomicInteger(0);
+  private static final Object INIT_COORDINATOR = new Object();
+  private static ConnectionManager<String, String, ?> connections;
+  private static AbstractRedisClient client;
+  private static final Map<String, SeriesBuffer> series = new ConcurrentHashMap<>();
+
+  private static final String METRIC_LABEL = "metric";
+
+  private final int batchSize;
+  private final String timestampKey;
+  private final String valueKey;
+  private final String tagPairDelimiter;
+  private final String timespanDelimiter;
+  private final String groupByKey;
+  private final String downsamplingKey;
+
+  private enum Command implements ProtocolKeyword {
+    CREATE("TS.CREATE"), MADD("TS.MADD"), MRANGE("TS.MRANGE");
+
+    private final byte[] bytes;
+
+    Command(String name) {
+      this.bytes = name.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    @Override
+    public byte[] getBytes() {
+      return bytes;
+    }
+  }
+
+  private static class SeriesBuffer {
+    private final String key;
+    private boolean created = false;
+    private List<String> samples = new ArrayList<>();
+
+    SeriesBuffer(String key) {
+      this.key = key;
+    }
+  }
+
+  TimeSeriesRecordStore(RedisConfig redisConfig, int poolMaxSize) {
+    if (redisConfig.isClusterEnabled()) {
+      throw new IllegalArgumentException("The time series store does not support cluster mode");
+    }
+
+    synchronized (INIT_COORDINATOR) {
+      THREADS.incrementAndGet();
+      if (client == null) {
+        logger.debug("Initializing Redis client: datatype: TimeSeries");
+
+        RedisClientBuilder clientBuilder = new RedisClientBuilder.Builder().redisConfig(redisConfig).build();
+
+        client = clientBuilder.getClient();
+        connections = clientBuilder.getConnectionManager(client, poolMaxSize);
+      }
+    }
+
+    this.batchSize = Math.max(1, redisConfig.getTsBatch());
+    this.timestampKey = redisConfig.getTsTimestampKey();
+    this.valueKey = redisConfig.getTsValueKey();
+    this.tagPairDelimiter = redisConfig.getTsTagPairDelimiter();
+    this.timespanDelimiter = redisConfig.getTsQueryTimespanDelimiter();
+    this.groupByKey = redisConfig.getTsGroupByKey();
+    this.downsamplingKey = redisConfig.getTsDownsamplingKey();
+  }
+
+  private static String seriesKey(String metric, SortedMap<String, String> tags) {
+    StringBuilder key = new StringBuilder(metric);
+    for (Map.Entry<String, String> tag : tags.entrySet()) {
+      key.append(':').append(tag.getKey()).append('=').append(tag.getValue());
+    }
+    return key.toString();
+  }
+
+  private static void create(String key, String metric, SortedMap<String, String> tags) throws Exception {
+    CommandArgs<String, String> args = new CommandArgs<>(StringCodec.UTF8)
+        .addKey(key)
+        .add("DUPLICATE_POLICY").add("LAST")
+        .add("LABELS").add(METRIC_LABEL).add(metric);
+    for (Map.Entry<String, String> tag : tags.entrySet()) {
+      args.add(tag.getKey()).add(tag.getValue());
+    }
+    try {
+      connections.sync(commands -> commands.dispatch(Command.CREATE, new StatusOutput<>(StringCodec.UTF8), args));
+    } catch (RedisCommandExecutionException e) {
+      if (!e.getMessage().contains("already exists")) {
+        throw e;
+      }
+    }
+  }
+
+  private static void write(String key, List<String> samples) throws Exception {
+    CommandArgs<String, String> args = new CommandArgs<>(StringCodec.UTF8);
+    for (int i = 0; i < samples.size(); i += 2) {
+      args.addKey(key).add(samples.get(i)).add(samples.get(i + 1));
+    }
+    List<Object> reply = connections.sync(commands -> commands.dispatch(Command.MADD, new ArrayOutput<>(StringCodec.UTF8), args));
+    for (Object result : reply) {
+      if (result instanceof Throwable || !(result instanceof Long)) {
+        throw new IllegalStateException("TS.MADD rejected a sample for " + key + ": " + result);
+      }
+    }
+  }
+
+  private static void flush(SeriesBuffer buffer) throws Exception {
+    List<String> samples;
+    synchronized (buffer) {
+      if (buffer.samples.isEmpty()) {
+        return;
+      }
+      samples = buffer.samples;
+      buffer.samples = new ArrayList<>();
+    }
+    write(buffer.key, samples);
+  }
+
+  @Override
+  public void disconnect() throws DBException {
+    Exception failure = null;
+    synchronized (INIT_COORDINATOR) {
+      int count = THREADS.decrementAndGet();
+      if (client != null && count == 0) {
+        for (SeriesBuffer buffer : series.values()) {
+          try {
+            flush(buffer);
+          } catch (Exception e) {
+            logger.error("Error flushing time series {}: {}", buffer.key, e.getMessage(), e);
+            failure = e;
+          }
+        }
+        series.clear();
+        logger.debug("Shutting down Redis client");
+        connections.close();
+        client.shutdown();
+        connections = null;
+        client = null;
+      }
+    }
+
+    if (failure != null) {
+      throw new DBException(failure);
+    }
+  }
+
+  /*
+    Splits the query fields into label filters and the reserved
+    timestamp, downsampling and group-by entries.
+   */
+  private Map<String, String> parseQuery(Set<String> fields, List<String> filters) {
+    Map<String, String> reserved = new HashMap<>();
+    if (fields == null) {
+      return reserved;
+    }
+    for (String field : fields) {
+      int split = field.indexOf(tagPairDelimiter);
+      if (split < 0) {
+        continue;
+      }
+      String name = field.substring(0, split);
+      String value = field.substring(split + tagPairDelimiter.length());
+      if (name.equals(timestampKey) || name.equals(downsamplingKey) || name.equals(groupByKey)) {
+        reserved.put(name, value);
+      } else if (!value.isEmpty()) {
+        filters.add(name + "=" + value);
+      }
+    }
+    return reserved;
+  }
+
+  private static String reducer(String function) {
+    switch (function.toUpperCase()) {
+      case "AVERAGE":
+        return "avg";
+      case "COUNT":
+        return "count";
+      case "MAX":
+        return "max";
+      case "MIN":
+        return "min";
+      default:
+        return "sum";
+    }
+  }
+
+  private Status range(String metric, Set<String> fields, Map<String, ByteIterator> result) throws Exception {
+    CommandArgs<String, String> args = rangeArgs(metric, fields);
+    List<Object> reply = connections.sync(commands -> commands.dispatch(Command.MRANGE, new ArrayOutput<>(StringCodec.UTF8), args));
+    putSeries(reply, result);
+    return result.isEmpty() ? Status.NOT_FOUND : Status.OK;
+  }
+
+  private CommandArgs<String, String> rangeArgs(String metric, Set<String> fields) {
+    List<String> filters = new ArrayList<>();
+    Map<String, String> reserved = parseQuery(fields, filters);
+
+    String start = "-";
+    String end = "+";
+    String timestamp = reserved.get(timestampKey);
+    if (timestamp != null) {
+      int split = timestamp.indexOf(timespanDelimiter);
+      start = split < 0 ? timestamp : timestamp.substring(0, split);
+      end = split < 0 ? timestamp : timestamp.substring(split + timespanDelimiter.length());
+    }
+
+    CommandArgs<String, String> args = new CommandArgs<>(StringCodec.UTF8).add(start).add(end);
+    String downsampling = reserved.get(downsamplingKey);
+    if (downsampling != null) {
+      int digits = 0;
+      while (digits < downsampling.length() && !Character.isDigit(downsampling.charAt(digits))) {
+        digits++;
+      }
+      if (digits < downsampling.length()) {
+        args.add("AGGREGATION").add(reducer(downsampling.substring(0, digits))).add(downsampling.substring(digits));
+      }
+    }
+    args.add("FILTER").add(METRIC_LABEL + "=" + metric);
+    for (String filter : filters) {
+      args.add(filter);
+    }
+    String groupBy = reserved.get(groupByKey);
+    if (groupBy != null) {
+      args.add("GROUPBY").add(METRIC_LABEL).add("REDUCE").add(reducer(groupBy));
+    }
+    return args;
+  }
+
+  /*
+    Adds the last sample of every series in an MRANGE reply.  RESP2 returns
+    one array per series; RESP3 returns a map, which arrives flattened as
+    alternating series names and entries.  In both cases the samples are the
+    last array of the series entry.
+   */
+  private static void putSeries(List<Object> reply, Map<String, ByteIterator> result) {
+    for (int i = 0; i < reply.size(); i++) {
+      Object element = reply.get(i);
+      String name;
+      List<?> entry;
+      if (element instanceof List && !((List<?>) element).isEmpty() && ((List<?>) element).get(0) instanceof String) {
+        entry = (List<?>) element;
+        name = (String) entry.get(0);
+      } else if (element instanceof String && i + 1 < reply.size() && reply.get(i + 1) instanceof List) {
+        name = (String) element;
+        entry = (List<?>) reply.get(++i);
+      } else {
+        continue;
+      }
+      Object samples = entry.get(entry.size() - 1);
+      if (!(samples instanceof List) || ((List<?>) samples).isEmpty()) {
+        continue;
+      }
+      Object last = ((List<?>) samples).get(((List<?>) samples).size() - 1);
+      if (last instanceof List && ((List<?>) last).size() > 1) {
+        double value = Double.parseDouble(String.valueOf(((List<?>) last).get(1)));
+        result.put(name, new NumericByteIterator(value));
+      }
+    }
+  }
+
+  @Override
+  public Status read(String table, String key, Set<String> fields, Map<String, ByteIterator> result) {
+    try {
+      return range(key, fields, result);
+    } catch (Exception e) {
+      logger.error("Error during TimeSeries read: {}", e.getMessage(), e);
+      return Status.ERROR;
+    }
+  }
+
+  @Override
+  public CompletableFuture<Status> readAsync(String table, String key, Set<String> fields,
+                                             Map<String, ByteIterator> result, boolean alternate) {
+    try {
+      CommandArgs<String, String> args = rangeArgs(key, fields);
+      return connections.submit(alternate,
+          commands -> commands.dispatch(Command.MRANGE, new ArrayOutput<>(StringCodec.UTF8), args), reply -> {
+            putSeries(reply, result);
+            return result.isEmpty() ? Status.NOT_FOUND : Status.OK;
+          });
+    } catch (Exception e) {
+      logger.error("Error during TimeSeries read: {}", e.getMessage(), e);
+      return CompletableFuture.completedFuture(Status.ERROR);
+    }
+  }
+
+  @Override
+  public Status insert(String table, String key, Map<String, ByteIterator> values) {
+    SortedMap<String, String> tags = new TreeMap<>();
+    NumericByteIterator timestamp = null;
+    NumericByteIterator value = null;
+    for (Map.Entry<String, ByteIterator> entry : values.entrySet()) {
+      if (entry.getKey().equals(timestampKey)) {
+        timestamp = (NumericByteIterator) entry.getValue();
+      } else if (entry.getKey().equals(valueKey)) {
+        value = (NumericByteIterator) entry.getValue();
+      } else {
+        tags.put(entry.getKey(), entry.getValue().toString());
+      }
+    }
+    if (timestamp == null || value == null) {
+      logger.error("Time series insert for {} is missing the {} or {} field", key, timestampKey, valueKey);
+      return Status.BAD_REQUEST;
+    }
+
+    String seriesKey = seriesKey(key, tags);
+    SeriesBuffer buffer = series.computeIfAbsent(seriesKey, SeriesBuffer::new);
+
+    try {
+      List<String> batch = null;
+      synchronized (buffer) {
+        if (!buffer.created) {
+          create(seriesKey, key, tags);
+          buffer.created = true;
+        }
+        buffer.samples.add(String.valueOf(timestamp.getLong()));
+        buffer.samples.add(value.isFloatingPoint() ? String.valueOf(value.getDouble()) : String.valueOf(value.getLong()));
+        if (buffer.samples.size() >= batchSize * 2) {
+          batch = buffer.samples;
+          buffer.samples = new ArrayList<>(batchSize * 2);
+        }
+      }
+      if (batch == null) {
+        return Status.BATCHED_OK;
+      }
+      write(seriesKey, batch);
+    } catch (Exception e) {
+      logger.error("Error during TimeSeries insert: {}", e.getMessage(), e);
+      return Status.ERROR;
+    }
+
+    return Status.OK;
+  }
+
+  @Override
+  public Status update(String table, String key, Map<String, ByteIterator> values) {
+    // samples are written with DUPLICATE_POLICY LAST, so an update is an insert at an existing timestamp
+    return insert(table, key, values);
+  }
+
+  @Override
+  public Status delete(String table, String key) {
+    return Status.NOT_IMPLEMENTED;
+  }
+
+  @Override
+  public Status scan(String table, String key, int count, Set<String> fields,
+                     Vector<HashMap<String, ByteIterator>> result) {
+    try {
+      HashMap<String, ByteIterator> values = new HashMap<>();
+      Status status = range(key, fields, values);
+      if (status == Status.OK) {
+        result.add(values);
+      }
+      return status;
+    } catch (Exception e) {
+      logger.error("Error during TimeSeries scan: {}", e.getMessage(), e);
+      return Status.ERROR;
+    }
+  }
+}
@@ -0,0 +1,291 @@
+package com.redislabs.ycsb;
+
+import com.codelry.util.ycsb.measurements.Measurements;
+
+import com.github.luben.zstd.Zstd;
+import net.jpountz.lz4.LZ4Factory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+  Optional compression stage for record values.
+
+  In FIELD mode each value at or above the threshold is compressed on its own.
+  In RECORD mode all fields are packed into a single hash field and the packed
+  record is compressed as a unit.  With compression on, every stored value
+  starts with a one byte header naming the algorithm (0 for raw), followed
+  for compressed values by the original length, so values written with one
+  algorithm or threshold can be read back with another.  Values written with
+  compression NONE carry no header and can not be read with compression on,
+  nor can headed values be read with it off; the dataset fingerprint covers
+  the compression setting so such a dataset is reloaded or refused instead.
+  Values below the threshold, and values that do not get smaller, are stored
+  raw.
+
+  Compression and decompression time are recorded under the COMPRESS and
+  DECOMPRESS measurements, and the overall ratio is logged on shutdown.
+ */
+public class ValueCompressor {
+  private static final Logger logger = LoggerFactory.getLogger(ValueCompressor.class);
+
+  public static final String RECORD_FIELD = "record";
+
+  private static final byte RAW = 0;
+  private static final byte DEFLATE = 1;
+  private static final byte LZ4 = 2;
+  private static final byte ZSTD = 3;
+
+  private static final AtomicLong rawBytes = new AtomicLong(0);
+  private static final AtomicLong storedBytes = new AtomicLong(0);
+
+  private final byte algorithm;
+  private final boolean recordMode;
+  private final int threshold;
+  private final Measurements measurements = Measurements.getMeasurements();
+
+  public ValueCompressor(RedisConfig redisConfig) {
+    String name = redisConfig.getCompression().toUpperCase();
+    switch (name) {
+      case "NONE":
+        this.algorithm = RAW;
+        break;
+      case "DEFLATE":
+        this.algorithm = DEFLATE;
+        break;
+      case "LZ4":
+        this.algorithm = LZ4;
+        break;
+      case "ZSTD":
+        this.algorithm = ZSTD;
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown compression algorithm: " + name);
+    }
+    String mode = redisConfig.getCompressionMode().toUpperCase();
+    if (!mode.equals("FIELD") && !mode.equals("RECORD")) {
+      throw new IllegalArgumentException("Unknown compression mode: " + mode);
+    }
+    this.recordMode = algorithm != RAW && mode.equals("RECORD");
+    this.threshold = redisConfig.getCompressionThreshold();
+  }
+
+  public boolean isEnabled() {
+    return algorithm != RAW;
+  }
+
+  public boolean isRecordMode() {
+    return recordMode;
+  }
+
+  public Map<String, byte[]> encode(Map<String, byte[]> values) {
+    if (!isEnabled()) {
+      return values;
+    }
+    if (recordMode) {
+      return Collections.singletonMap(RECORD_FIELD, compress(pack(values)));
+    }
+    Map<String, byte[]> map = new HashMap<>(values.size());
+    for (Map.Entry<String, byte[]> entry : values.entrySet()) {
+      map.put(entry.getKey(), compress(entry.getValue()));
+    }
+    return map;
+  }
+
+  public Map<String, byte[]> decode(Map<String, byte[]> values) {
+    if (!isEnabled()) {
+      return values;
+    }
+    if (recordMode) {
+      byte[] record = values.get(RECORD_FIELD);
+      return record == null ? new HashMap<>() : unpack(decompress(record));
+    }
+    Map<String, byte[]> map = new HashMap<>(values.size());
+    for (Map.Entry<String, byte[]> entry : values.entrySet()) {
+      map.put(entry.getKey(), decompress(entry.getValue()));
+    }
+    return map;
+  }
+
+  public byte[] compress(byte[] value) {
+    if (!isEnabled()) {
+      return value;
+    }
+    long start = System.nanoTime();
+    byte[] stored;
+    if (value.length < threshold) {
+      stored = frame(RAW, value.length, value, value.length);
+    } else {
+      switch (algorithm) {
+        case LZ4:
+          stored = lz4Compress(value);
+          break;
+        case ZSTD:
+          stored = zstdCompress(value);
+          break;
+        default:
+          stored = deflate(value);
+          break;
+      }
+      if (stored.length > value.length) {
+        stored = frame(RAW, value.length, value, value.length);
+      }
+    }
+    measurements.measure("COMPRESS", (int) TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+    rawBytes.addAndGet(value.length);
+    storedBytes.addAndGet(stored.length);
+    return stored;
+  }
+
+  public byte[] decompress(byte[] value) {
+    if (!isEnabled() || value == null || value.length == 0) {
+      return value;
+    }
+    long start = System.nanoTime();
+    byte[] original;
+    if (value[0] == RAW) {
+      original = new byte[value.length - 1];
+      System.arraycopy(value, 1, original, 0, original.length);
+    } else {
+      int length = ((value[1] & 0xff) << 24) | ((value[2] & 0xff) << 16) | ((value[3] & 0xff) << 8) | (value[4] & 0xff);
+      switch (value[0]) {
+        case LZ4:
+          original = LZ4Factory.fastestInstance().fastDecompressor().decompress(value, 5, length);
+          break;
+        case ZSTD:
+          original = new byte[length];
+          Zstd.decompressByteArray(original, 0, length, value, 5, value.length - 5);
+          break;
+        case DEFLATE:
+          original = inflate(value, length);
+          break;
+        default:
+          throw new IllegalStateException("Unknown compression header: " + value[0]);
+      }
+    }
+    measurements.measure("DECOMPRESS", (int) TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+    return original;
+  }
+
+  private static byte[] frame(byte header, int length, byte[] payload, int payloadLength) {
+    if (header == RAW) {
+      byte[] stored = new byte[payloadLength + 1];
+      System.arraycopy(payload, 0, stored, 1, payloadLength);
+      return stored;
+    }
+    byte[] stored = new byte[payloadLength + 5];
+    stored[0] = header;
+    stored[1] = (byte) (length >>> 24);
+    stored[2] = (byte) (length >>> 16);
+    stored[3] = (byte) (length >>> 8);
+    stored[4] = (byte) length;
+    System.arraycopy(payload, 0, stored, 5, payloadLength);
+    return stored;
+  }
+
+  private static byte[] lz4Compress(byte[] value) {
+    byte[] compressed = LZ4Factory.fastestInstance().fastCompressor().compress(value);
+    return frame(LZ4, value.length, compressed, compressed.length);
+  }
+
+  private static byte[] zstdCompress(byte[] value) {
+    byte[] compressed = Zstd.compress(value);
+    return frame(ZSTD, value.length, compressed, compressed.length);
+  }
+
+  private static byte[] deflate(byte[] value) {
+    Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    try {
+      deflater.setInput(value);
+      deflater.finish();
+      byte[] buffer = new byte[value.length + 64];
+      int length = 0;
+      while (!deflater.finished()) {
+        if (length == buffer.length) {
+          byte[] grown = new byte[buffer.length * 2];
+          System.arraycopy(buffer, 0, grown, 0, length);
+          buffer = grown;
+        }
+        length += deflater.deflate(buffer, length, buffer.length - length);
+      }
+      return frame(DEFLATE, value.length, buffer, length);
+    } finally {
+      deflater.end();
+    }
+  }
+
+  private static byte[] inflate(byte[] value, int length) {
+    Inflater inflater = new Inflater();
+    try {
+      inflater.setInput(value, 5, value.length - 5);
+      byte[] original = new byte[length];
+      int offset = 0;
+      while (offset < length && !inflater.finished()) {
+        offset += inflater.inflate(original, offset, length - offset);
+      }
+      return original;
+    } catch (DataFormatException e) {
+      throw new IllegalStateException("Corrupt compressed value", e);
+    } finally {
+      inflater.end();
+    }
+  }
+
+  private static byte[] pack(Map<String, byte[]> values) {
+    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(buffer)) {
+      out.writeInt(values.size());
+      for (Map.Entry<String, byte[]> entry : values.entrySet()) {
+        byte[] name = entry.getKey().getBytes(StandardCharsets.UTF_8);
+        out.writeInt(name.length);
+        out.write(name);
+        out.writeInt(entry.getValue().length);
+        out.write(entry.getValue());
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+    return buffer.toByteArray();
+  }
+
+  private static Map<String, byte[]> unpack(byte[] record) {
+    try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(record))) {
+      int count = in.readInt();
+      Map<String, byte[]> values = new HashMap<>(count);
+      for (int i = 0; i < count; i++) {
+        byte[] name = new byte[in.readInt()];
+        in.readFully(name);
+        byte[] value = new byte[in.readInt()];
+        in.readFully(value);
+        values.put(new String(name, StandardCharsets.UTF_8), value);
+      }
+      return values;
+    } catch (IOException e) {
+      throw new IllegalStateException("Corrupt packed record", e);
+    }
+  }
+
+  public static void logRatio() {
+    long raw = rawBytes.getAndSet(0);
+    long stored = storedBytes.getAndSet(0);
+    if (raw == 0 || stored == 0) {
+      return;
+    }
+    logger.info("Compressed {} bytes to {} bytes (ratio {})", raw, stored, String.format("%.2f", (double) raw / stored));
+  }
+}
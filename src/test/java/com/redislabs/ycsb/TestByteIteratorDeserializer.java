@@ -0,0 +1,77 @@
+package com.redislabs.ycsb;
+
+import com.codelry.util.ycsb.ByteIterator;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestByteIteratorDeserializer {
+
+  private static final JsonFactory factory = new JsonFactory();
+
+  private static JsonParser parser(String json, JsonToken start) throws Exception {
+    JsonParser jp = factory.createParser(json);
+    assertEquals(start, jp.nextToken());
+    return jp;
+  }
+
+  @Test
+  void runReadObject() throws Exception {
+    String json = "{\"field0\":\"a\",\"nested\":{\"field1\":\"x\"},\"list\":[1,2],\"field1\":\"b\",\"field2\":5}";
+    Map<String, ByteIterator> result = new HashMap<>();
+    try (JsonParser jp = parser(json, JsonToken.START_OBJECT)) {
+      ByteIteratorDeserializer.readObject(jp, null, result);
+      assertEquals(JsonToken.END_OBJECT, jp.currentToken());
+    }
+    assertEquals(new HashSet<>(Arrays.asList("field0", "field1", "field2")), result.keySet());
+    assertEquals("a", result.get("field0").toString());
+    assertEquals("b", result.get("field1").toString());
+    assertEquals("5", result.get("field2").toString());
+  }
+
+  @Test
+  void runReadObjectFields() throws Exception {
+    String json = "{\"field0\":\"a\",\"field1\":\"b\",\"field2\":\"c\"}";
+    Map<String, ByteIterator> result = new HashMap<>();
+    try (JsonParser jp = parser(json, JsonToken.START_OBJECT)) {
+      ByteIteratorDeserializer.readObject(jp, Collections.singleton("field1"), result);
+    }
+    assertEquals(1, result.size());
+    assertEquals("b", result.get("field1").toString());
+  }
+
+  @Test
+  void runReadFirstElement() throws Exception {
+    Map<String, ByteIterator> result = new HashMap<>();
+    try (JsonParser jp = parser("[\"v\",{\"a\":1},[2]]", JsonToken.START_ARRAY)) {
+      ByteIteratorDeserializer.readFirstElement(jp, "field0", result);
+      assertEquals(JsonToken.END_ARRAY, jp.currentToken());
+    }
+    assertEquals("v", result.get("field0").toString());
+  }
+
+  @Test
+  void runReadFirstElementSkipped() throws Exception {
+    Map<String, ByteIterator> result = new HashMap<>();
+    try (JsonParser jp = parser("[]", JsonToken.START_ARRAY)) {
+      ByteIteratorDeserializer.readFirstElement(jp, "field0", result);
+      assertEquals(JsonToken.END_ARRAY, jp.currentToken());
+    }
+    try (JsonParser jp = parser("[{\"a\":1}]", JsonToken.START_ARRAY)) {
+      ByteIteratorDeserializer.readFirstElement(jp, "field0", result);
+      assertEquals(JsonToken.END_ARRAY, jp.currentToken());
+    }
+    assertTrue(result.isEmpty());
+  }
+}
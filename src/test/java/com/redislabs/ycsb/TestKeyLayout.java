@@ -0,0 +1,49 @@
+package com.redislabs.ycsb;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TestKeyLayout {
+
+  private static KeyLayout layout(String name, long bucketSize) {
+    Properties properties = new Properties();
+    properties.setProperty(RedisConfig.REDIS_KEY_LAYOUT, name);
+    properties.setProperty(RedisConfig.REDIS_KEY_BUCKET_SIZE, String.valueOf(bucketSize));
+    return new KeyLayout(new RedisConfig(properties));
+  }
+
+  @Test
+  void runBucket() {
+    KeyLayout layout = layout("BUCKET", 1000);
+    assertEquals("user{12}12345", layout.apply("user12345"));
+    assertEquals("user{0}999", layout.apply("user999"));
+    assertEquals(layout.apply("user12000").substring(0, 8), layout.apply("user12999").substring(0, 8));
+    assertEquals("user", layout.apply("user"));
+  }
+
+  @Test
+  void runUnsigned() {
+    KeyLayout layout = layout("BUCKET", 1000);
+    String key = "user18446744073709551615";
+    assertEquals("user{18446744073709551}18446744073709551615", layout.apply(key));
+  }
+
+  @Test
+  void runKeyNumber() {
+    KeyLayout layout = layout("BUCKET", 1000);
+    for (String key : new String[]{"user0", "user12345", "user6284781860667377211"}) {
+      String number = KeyLayout.keyNumber(key);
+      assertEquals(key.substring(4), number);
+      assertEquals(number, KeyLayout.keyNumber(layout.apply(key)));
+    }
+  }
+
+  @Test
+  void runNone() {
+    KeyLayout layout = layout("NONE", 1000);
+    assertEquals("user12345", layout.apply("user12345"));
+  }
+}
@@ -0,0 +1,108 @@
+package com.redislabs.ycsb;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogReader;
+import org.HdrHistogram.HistogramLogWriter;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestMergeResults {
+
+  @TempDir
+  File tempDir;
+
+  private File summary(String name, double throughput, long runTime, long barrier) throws Exception {
+    File file = new File(tempDir, name);
+    String text = "[OVERALL], RunTime(ms), " + runTime + "\n"
+        + "[OVERALL], Throughput(ops/sec), " + throughput + "\n"
+        + "[BARRIER-WAIT], MaxLatency(us), " + barrier + "\n";
+    Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+    return file;
+  }
+
+  private static void histogram(File file, long... values) throws Exception {
+    Histogram histogram = new Histogram(3);
+    for (long value : values) {
+      histogram.recordValue(value);
+    }
+    try (PrintStream out = new PrintStream(file)) {
+      HistogramLogWriter writer = new HistogramLogWriter(out);
+      writer.outputLogFormatVersion();
+      writer.outputLegend();
+      writer.outputIntervalHistogram(histogram);
+    }
+  }
+
+  @Test
+  void runReadSummary() throws Exception {
+    MergeResults.Summary summary = MergeResults.readSummary(summary("run.txt", 1000.0, 10000, 2000000));
+    assertNotNull(summary);
+    assertEquals(1000.0, summary.throughput);
+    assertEquals(10000.0, summary.runTimeMillis);
+    assertEquals(2000000.0, summary.barrierMicros);
+    assertEquals(1250.0, summary.activeThroughput(), 0.001);
+
+    File other = new File(tempDir, "other.txt");
+    Files.write(other.toPath(), "no results here\n".getBytes(StandardCharsets.UTF_8));
+    assertNull(MergeResults.readSummary(other));
+  }
+
+  @Test
+  void runOverallBarrier() throws Exception {
+    File file = new File(tempDir, "overall.txt");
+    String text = "[OVERALL], BarrierWait(us), 4000000\n"
+        + "[OVERALL], RunTime(ms), 10000\n"
+        + "[OVERALL], Throughput(ops/sec), 600.0\n"
+        + "[BARRIER-WAIT], MaxLatency(us), 1000000\n";
+    Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+
+    MergeResults.Summary summary = MergeResults.readSummary(file);
+    assertNotNull(summary);
+    assertEquals(4000000.0, summary.barrierMicros);
+    assertEquals(1000.0, summary.activeThroughput(), 0.001);
+  }
+
+  @Test
+  void runMerge() throws Exception {
+    File first = new File(tempDir, "first");
+    File second = new File(tempDir, "second");
+    File output = new File(tempDir, "merged");
+    assertTrue(first.mkdirs() && second.mkdirs());
+    histogram(new File(first, "READ.hdr"), 100, 200, 300);
+    histogram(new File(second, "READ.hdr"), 400, 500);
+
+    MergeResults.mergeResults(Arrays.asList(first, second, summary("a.txt", 100.0, 1000, 0),
+        summary("b.txt", 200.0, 1000, 0)), output);
+
+    HistogramLogReader reader = new HistogramLogReader(new File(output, "READ.hdr"));
+    try {
+      Histogram merged = (Histogram) reader.nextIntervalHistogram();
+      assertNotNull(merged);
+      assertEquals(5, merged.getTotalCount());
+      assertEquals(500, merged.getMaxValue());
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  void runMissingInput() {
+    assertThrows(IOException.class,
+        () -> MergeResults.mergeResults(Collections.singletonList(new File(tempDir, "missing")), null));
+  }
+}
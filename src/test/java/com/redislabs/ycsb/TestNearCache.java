@@ -0,0 +1,129 @@
+package com.redislabs.ycsb;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class TestNearCache {
+
+  private static Map<String, byte[]> record(int version) {
+    return Collections.singletonMap("field0", String.valueOf(version).getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static int version(Map<String, byte[]> record) {
+    return Integer.parseInt(new String(record.get("field0"), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  void runHitMiss() {
+    NearCache cache = new NearCache(1024);
+    assertNull(cache.get("user1"));
+    assertEquals(0, cache.getMisses());
+
+    Object token = cache.reserve("user1");
+    cache.install("user1", token, record(1));
+    assertNotNull(cache.get("user1"));
+    assertEquals(1, cache.getHits());
+    assertEquals(1, cache.getMisses());
+
+    cache.bypass();
+    assertEquals(1, cache.getBypasses());
+  }
+
+  @Test
+  void runInvalidateBeforeInstall() {
+    NearCache cache = new NearCache(1024);
+    Object token = cache.reserve("user1");
+    cache.invalidate("user1");
+    cache.install("user1", token, record(1));
+    assertNull(cache.get("user1"));
+    assertEquals(1, cache.getInvalidations());
+  }
+
+  @Test
+  void runEvictBeforeInstall() {
+    NearCache cache = new NearCache(1024);
+    Object token = cache.reserve("user1");
+    cache.evict("user1");
+    cache.install("user1", token, record(1));
+    assertNull(cache.get("user1"));
+    assertEquals(0, cache.getInvalidations());
+  }
+
+  @Test
+  void runSupersededReservation() {
+    NearCache cache = new NearCache(1024);
+    Object first = cache.reserve("user1");
+    Object second = cache.reserve("user1");
+    cache.install("user1", first, record(1));
+    assertNull(cache.get("user1"));
+    cache.install("user1", second, record(2));
+    assertEquals(2, version(cache.get("user1")));
+
+    Object released = cache.reserve("user2");
+    cache.release("user2", released);
+    cache.install("user2", released, record(1));
+    assertNull(cache.get("user2"));
+  }
+
+  @Test
+  void runClear() {
+    NearCache cache = new NearCache(1024);
+    Object token = cache.reserve("user1");
+    cache.install("user1", token, record(1));
+    cache.clear();
+    assertNull(cache.get("user1"));
+    assertEquals(0, cache.getInvalidations());
+
+    token = cache.reserve("user1");
+    cache.install("user1", token, record(1));
+    cache.invalidateAll();
+    assertNull(cache.get("user1"));
+    assertEquals(1, cache.getInvalidations());
+  }
+
+  @Test
+  void runInvalidationRace() throws Exception {
+    NearCache cache = new NearCache(1024);
+    AtomicInteger server = new AtomicInteger(0);
+    AtomicBoolean done = new AtomicBoolean(false);
+    List<Thread> readers = new ArrayList<>();
+
+    for (int i = 0; i < 4; i++) {
+      Thread reader = new Thread(() -> {
+        while (!done.get()) {
+          if (cache.get("user1") == null) {
+            Object token = cache.reserve("user1");
+            cache.install("user1", token, record(server.get()));
+          }
+        }
+      });
+      readers.add(reader);
+      reader.start();
+    }
+
+    for (int i = 0; i < 10000; i++) {
+      server.incrementAndGet();
+      cache.invalidate("user1");
+    }
+    done.set(true);
+    for (Thread reader : readers) {
+      reader.join();
+    }
+
+    Map<String, byte[]> cached = cache.get("user1");
+    if (cached != null) {
+      assertEquals(server.get(), version(cached));
+    }
+  }
+}
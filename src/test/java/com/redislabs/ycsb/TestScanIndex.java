@@ -0,0 +1,123 @@
+package com.redislabs.ycsb;
+
+import io.lettuce.core.ScoredValue;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestScanIndex {
+
+  private static ScanIndex index(int shards, Properties extra) {
+    Properties properties = new Properties();
+    properties.setProperty(RedisConfig.REDIS_INDEX_SHARDS, String.valueOf(shards));
+    properties.setProperty(RedisConfig.REDIS_INDEX_ID_BLOCK, "10");
+    properties.putAll(extra);
+    return new ScanIndex(new RedisConfig(properties));
+  }
+
+  @Test
+  void runSingleShard() throws Exception {
+    ScanIndex index = index(1, new Properties());
+    assertFalse(index.isSharded());
+    assertEquals(1, index.indexKeys().size());
+    assertEquals(index.indexKeys().get(0), index.indexKey("user1"));
+
+    ScanIndex.IdLease lease = (key, amount) -> {
+      throw new IllegalStateException("a single shard does not lease");
+    };
+    assertEquals(1, index.nextScore(lease));
+    assertEquals(2, index.nextScore(lease));
+  }
+
+  @Test
+  void runShardedLease() throws Exception {
+    ScanIndex index = index(4, new Properties());
+    AtomicLong sequence = new AtomicLong(0);
+    AtomicInteger leases = new AtomicInteger(0);
+    ScanIndex.IdLease lease = (key, amount) -> {
+      leases.incrementAndGet();
+      return sequence.addAndGet(amount);
+    };
+
+    for (long expected = 1; expected <= 25; expected++) {
+      assertEquals(expected, index.nextScore(lease));
+    }
+    assertEquals(3, leases.get());
+  }
+
+  @Test
+  void runLeaseMode() throws Exception {
+    Properties properties = new Properties();
+    properties.setProperty(RedisConfig.REDIS_ID_MODE, "LEASE");
+    AtomicLong sequence = new AtomicLong(0);
+    ScanIndex.IdLease lease = (key, amount) -> sequence.addAndGet(amount);
+    // two generators sharing one sequence key never hand out the same score
+    ScanIndex first = index(1, properties);
+    ScanIndex second = index(1, properties);
+
+    List<Long> scores = new ArrayList<>();
+    for (int i = 0; i < 15; i++) {
+      scores.add(first.nextScore(lease));
+      scores.add(second.nextScore(lease));
+    }
+    assertEquals(scores.size(), scores.stream().distinct().count());
+  }
+
+  @Test
+  void runPartitionMode() throws Exception {
+    ScanIndex.IdLease lease = (key, amount) -> {
+      throw new IllegalStateException("partitioned loads do not lease");
+    };
+    Properties load = new Properties();
+    load.setProperty(RedisConfig.REDIS_ID_MODE, "PARTITION");
+    load.setProperty(RedisConfig.YCSB_DO_TRANSACTIONS, "false");
+    load.setProperty(RedisConfig.YCSB_INSERT_START, "1000");
+    ScanIndex index = index(1, load);
+    assertEquals(1001, index.nextScore(lease));
+    assertEquals(1002, index.nextScore(lease));
+
+    Properties run = new Properties();
+    run.setProperty(RedisConfig.REDIS_ID_MODE, "PARTITION");
+    run.setProperty(RedisConfig.YCSB_DO_TRANSACTIONS, "true");
+    run.setProperty(RedisConfig.YCSB_RECORD_COUNT, "500");
+    AtomicLong sequence = new AtomicLong(0);
+    ScanIndex running = index(1, run);
+    assertEquals(501, running.nextScore((key, amount) -> sequence.addAndGet(amount)));
+  }
+
+  @Test
+  void runShardKeys() {
+    ScanIndex index = index(4, new Properties());
+    assertTrue(index.isSharded());
+    assertEquals(4, index.indexKeys().size());
+    for (int i = 0; i < 100; i++) {
+      String key = "user" + i;
+      assertTrue(index.indexKeys().contains(index.indexKey(key)));
+      assertEquals(index.indexKey(key), index.indexKey(key));
+    }
+  }
+
+  @Test
+  void runMergeOrder() {
+    ScanIndex index = index(4, new Properties());
+    List<ScoredValue<String>> members = new ArrayList<>();
+    // replies from each shard arrive sorted, but the merged list is not
+    members.addAll(Arrays.asList(ScoredValue.just(3, "c"), ScoredValue.just(7, "g")));
+    members.addAll(Arrays.asList(ScoredValue.just(1, "a"), ScoredValue.just(5, "e")));
+    members.addAll(Arrays.asList(ScoredValue.just(2, "b"), ScoredValue.just(6, "f")));
+    members.addAll(Arrays.asList(ScoredValue.just(4, "d"), ScoredValue.just(8, "h")));
+
+    assertEquals(Arrays.asList("a", "b", "c", "d", "e"), index.sortedKeys(members, 5));
+    assertEquals(8, index.sortedKeys(members, 20).size());
+  }
+}
@@ -0,0 +1,51 @@
+package com.redislabs.ycsb;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestShardRouter {
+
+  private static final int KEYS = 100000;
+
+  @Test
+  void runSingle() {
+    ShardRouter router = new ShardRouter(0);
+    assertEquals(1, router.size());
+    for (int i = 0; i < 100; i++) {
+      assertEquals(0, router.route("user" + i));
+    }
+  }
+
+  @Test
+  void runDistribution() {
+    ShardRouter router = new ShardRouter(4);
+    int[] counts = new int[router.size()];
+    for (int i = 0; i < KEYS; i++) {
+      counts[router.route("user" + i)]++;
+    }
+    for (int count : counts) {
+      assertTrue(Math.abs(count - KEYS / 4) < KEYS / 40, "endpoint count " + count);
+    }
+  }
+
+  @Test
+  void runStability() {
+    ShardRouter router = new ShardRouter(4);
+    ShardRouter same = new ShardRouter(4);
+    ShardRouter grown = new ShardRouter(5);
+    int moved = 0;
+    for (int i = 0; i < KEYS; i++) {
+      String key = "user" + i;
+      int endpoint = router.route(key);
+      assertEquals(endpoint, same.route(key));
+      int next = grown.route(key);
+      if (next != endpoint) {
+        assertEquals(4, next);
+        moved++;
+      }
+    }
+    assertTrue(moved > KEYS * 15 / 100 && moved < KEYS * 25 / 100, "moved " + moved);
+  }
+}
@@ -0,0 +1,99 @@
+package com.redislabs.ycsb;
+
+import com.codelry.util.ycsb.measurements.Measurements;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestValueCompressor {
+
+  private static final String[] CODECS = {"DEFLATE", "LZ4", "ZSTD"};
+
+  @BeforeAll
+  static void setup() {
+    Measurements.setProperties(new Properties());
+  }
+
+  private static ValueCompressor compressor(String codec, String mode) {
+    Properties properties = new Properties();
+    properties.setProperty(RedisConfig.REDIS_COMPRESSION, codec);
+    properties.setProperty(RedisConfig.REDIS_COMPRESSION_MODE, mode);
+    properties.setProperty(RedisConfig.REDIS_COMPRESSION_THRESHOLD, "64");
+    return new ValueCompressor(new RedisConfig(properties));
+  }
+
+  private static byte[] compressible() {
+    StringBuilder value = new StringBuilder();
+    for (int i = 0; i < 100; i++) {
+      value.append("field-value-");
+    }
+    return value.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Test
+  void runFieldRoundTrip() {
+    byte[] value = compressible();
+    for (String codec : CODECS) {
+      ValueCompressor compressor = compressor(codec, "FIELD");
+      byte[] stored = compressor.compress(value);
+      assertTrue(stored[0] != 0, codec);
+      assertTrue(stored.length < value.length, codec);
+      assertArrayEquals(value, compressor.decompress(stored), codec);
+    }
+  }
+
+  @Test
+  void runRecordRoundTrip() {
+    Map<String, byte[]> record = new HashMap<>();
+    for (int i = 0; i < 10; i++) {
+      record.put("field" + i, compressible());
+    }
+    for (String codec : CODECS) {
+      ValueCompressor compressor = compressor(codec, "RECORD");
+      Map<String, byte[]> stored = compressor.encode(record);
+      assertEquals(1, stored.size(), codec);
+      assertTrue(stored.containsKey(ValueCompressor.RECORD_FIELD), codec);
+
+      Map<String, byte[]> decoded = compressor.decode(stored);
+      assertEquals(record.keySet(), decoded.keySet(), codec);
+      for (Map.Entry<String, byte[]> entry : record.entrySet()) {
+        assertArrayEquals(entry.getValue(), decoded.get(entry.getKey()), codec);
+      }
+    }
+  }
+
+  @Test
+  void runBelowThreshold() {
+    byte[] value = "short".getBytes(StandardCharsets.UTF_8);
+    for (String codec : CODECS) {
+      ValueCompressor compressor = compressor(codec, "FIELD");
+      byte[] stored = compressor.compress(value);
+      assertEquals(0, stored[0], codec);
+      assertEquals(value.length + 1, stored.length, codec);
+      assertArrayEquals(value, compressor.decompress(stored), codec);
+    }
+  }
+
+  @Test
+  void runIncompressible() {
+    byte[] value = new byte[256];
+    new Random(42).nextBytes(value);
+    for (String codec : CODECS) {
+      ValueCompressor compressor = compressor(codec, "FIELD");
+      byte[] stored = compressor.compress(value);
+      assertEquals(0, stored[0], codec);
+      assertEquals(value.length + 1, stored.length, codec);
+      assertArrayEquals(value, compressor.decompress(stored), codec);
+    }
+  }
+}